@@ -0,0 +1,75 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Forced move report for both players: the move, depth and nodes of a fixed depth search of every position of the
+ * tactical suite, with all adjacent moves generated at every node and with nodes under a threat restricted to the
+ * moves answering it. Positions a solver or threat search decides before the alpha-beta search read the same in
+ * both modes.
+ *
+ * Each player searches deterministically on one thread, without its opening book and with an empty transposition
+ * table, as in TacticalSuite, and without a time limit so every search reaches the depth.
+ *
+ * Usage: java ForcedMovesBenchmark [suite] [Player150278980 depth] [Player150382405 depth]
+ */
+public class ForcedMovesBenchmark {
+
+    static final String[] MODES = {"adjacent", "forced"};
+
+    public static void main(String[] args) throws IOException {
+        List<TacticalSuite.Position> positions = TacticalSuite.readSuite(
+                Paths.get(args.length > 0 ? args[0] : TacticalSuite.DEFAULT_SUITE));
+        int depth278980 = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int depth382405 = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        System.out.println("player\tmode\tposition\tmove\tdepth\tnodes\ttime (ms)");
+
+        for (int mode = 0; mode < MODES.length; mode++) {
+            long totalNodes = 0;
+            long totalTime = 0;
+            for (TacticalSuite.Position position : positions) {
+                Player150278980.transpositionTable.clear();
+                Player150278980 player = new Player150278980(TacticalSuite.game(position), 1);
+                player.setDeterministic(TacticalSuite.SEED);
+                player.useBook = false;
+                player.maxDepth = depth278980;
+                player.timeManager = new TimeManager(TimeManager.UNLIMITED);
+                player.useForcedMoves = mode > 0;
+
+                long start = System.nanoTime();
+                Move move = player.chooseMove(position.board, position.color);
+                long time = System.nanoTime() - start;
+                totalNodes += player.nodes;
+                totalTime += time;
+                report("Player150278980", MODES[mode], position.name, move, player.depth, player.nodes, time);
+            }
+            report("Player150278980", MODES[mode], "all", null, depth278980, totalNodes, totalTime);
+        }
+
+        for (int mode = 0; mode < MODES.length; mode++) {
+            long totalNodes = 0;
+            long totalTime = 0;
+            for (TacticalSuite.Position position : positions) {
+                Player150382405 player = new Player150382405();
+                player.setDeterministic(TacticalSuite.SEED);
+                player.maxDepth = depth382405;
+                player.timeManager = new TimeManager(TimeManager.UNLIMITED);
+                player.useForcedMoves = mode > 0;
+
+                long start = System.nanoTime();
+                Move move = player.chooseMove(position.board, position.color);
+                long time = System.nanoTime() - start;
+                totalNodes += player.nodes.sum();
+                totalTime += time;
+                report("Player150382405", MODES[mode], position.name, move, player.depth, player.nodes.sum(), time);
+            }
+            report("Player150382405", MODES[mode], "all", null, depth382405, totalNodes, totalTime);
+        }
+    }
+
+    static void report(String player, String mode, String position, Move move, int depth, long nodes, long time) {
+        System.out.printf("%s\t%s\t%s\t%s\t%d\t%d\t%.2f%n", player, mode, position,
+                move == null ? "-" : "(" + move.row + "," + move.col + ")", depth, nodes, time / 1e6);
+    }
+}
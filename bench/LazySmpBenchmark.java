@@ -0,0 +1,65 @@
+import java.awt.*;
+
+/**
+ * Scaling report for the lazy SMP search in Player150278980.
+ *
+ * For each thread count the main thread searches every position to a fixed depth with a cleared transposition
+ * table, reporting the time to reach that depth and the nodes per second over all threads.
+ *
+ * Usage: java LazySmpBenchmark [depth] [threads...]
+ */
+public class LazySmpBenchmark {
+
+    // Move sequences starting with white, white is always the player searching
+    static final int[][][] POSITIONS = {
+            {{4, 4}, {3, 3}, {4, 3}},
+            {{4, 4}, {3, 4}, {3, 3}, {5, 5}, {2, 2}},
+            {{3, 3}, {4, 4}, {3, 4}, {4, 3}, {2, 5}, {5, 2}, {4, 5}},
+            {{4, 4}, {4, 5}, {3, 5}, {5, 3}, {3, 3}, {2, 4}, {5, 4}, {3, 4}, {2, 3}},
+    };
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+        int[] threadCounts = {1, 2, 4, 8, 16};
+        if (args.length > 1) {
+            threadCounts = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) threadCounts[i - 1] = Integer.parseInt(args[i]);
+        }
+
+        System.out.println("cores: " + Runtime.getRuntime().availableProcessors() + ", depth: " + depth);
+        System.out.println("threads\tposition\ttime-to-depth (ms)\tnodes\tnodes/sec");
+
+        for (int threads : threadCounts) {
+            long totalTime = 0;
+            long totalNodes = 0;
+            for (int p = 0; p < POSITIONS.length; p++) {
+                Player150278980.transpositionTable.clear();
+
+                Color[][] board = new Color[GomokuBoard.ROWS][GomokuBoard.COLS];
+                Player150278980.Game game = new Player150278980.Game();
+                for (int i = 0; i < POSITIONS[p].length; i++) {
+                    int[] move = POSITIONS[p][i];
+                    board[move[0]][move[1]] = i % 2 == 0 ? Color.white : Color.black;
+                }
+                game.sync(new Color[GomokuBoard.ROWS][GomokuBoard.COLS], Color.white);
+                for (int[] move : POSITIONS[p]) {
+                    game.move(new Move(move[0], move[1]), true);
+                }
+
+                Player150278980 player = new Player150278980(game, threads);
+                player.maxDepth = depth;
+
+                long start = System.nanoTime();
+                player.chooseMove(board, Color.white);
+                long time = (System.nanoTime() - start) / 1000000;
+
+                totalTime += time;
+                totalNodes += player.nodes;
+                System.out.println(threads + "\t" + p + "\t" + time + "\t" + player.nodes + "\t"
+                        + (player.nodes * 1000 / Math.max(1, time)));
+            }
+            System.out.println(threads + "\tall\t" + totalTime + "\t" + totalNodes + "\t"
+                    + (totalNodes * 1000 / Math.max(1, totalTime)));
+        }
+    }
+}
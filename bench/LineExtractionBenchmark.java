@@ -0,0 +1,159 @@
+import java.util.Random;
+
+/**
+ * Speed report for the line extraction of Player150278980.Game, comparing the four rotated bitboards it used to
+ * keep with the multiply-shift extraction from the plain board that replaced them.
+ *
+ * Each step makes a random move, gathers the row, column, diagonal and anti-diagonal through it for both the
+ * stones and the empty squares, and unmakes the move, as Game does for every node. The rotated path below is the
+ * one Game used, kept here for comparison.
+ *
+ * Usage: java LineExtractionBenchmark [steps] [rounds]
+ */
+public class LineExtractionBenchmark {
+
+    // Rotated boards, stones and empty squares
+    private static long board, board90, boardR45, boardL45;
+    private static long empty, empty90, emptyR45, emptyL45;
+
+    public static void main(String[] args) {
+        int steps = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 22;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        Random random = new Random(0);
+        int[] squares = new int[steps];
+        for (int i = 0; i < steps; i++) {
+            squares[i] = random.nextInt(GomokuBoard.ROWS * GomokuBoard.COLS);
+        }
+
+        // A fixed middle game position the moves are made on top of
+        long stones = random.nextLong() & random.nextLong();
+        long occupied = stones | (random.nextLong() & random.nextLong());
+
+        System.out.println("round\trotated (ns/move)\tmagic (ns/move)\tspeedup");
+
+        for (int round = 0; round <= rounds; round++) {
+            long start = System.nanoTime();
+            long rotatedSum = rotated(squares, stones, ~occupied);
+            long rotatedTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long magicSum = magic(squares, stones, ~occupied);
+            long magicTime = System.nanoTime() - start;
+
+            if (rotatedSum != magicSum) {
+                throw new IllegalStateException("Line extraction differs: " + rotatedSum + " != " + magicSum);
+            }
+
+            // Round 0 is the warm up
+            if (round > 0) {
+                System.out.printf("%d\t%.2f\t%.2f\t%.2fx%n", round, (double) rotatedTime / steps,
+                        (double) magicTime / steps, (double) rotatedTime / Math.max(1, magicTime));
+            }
+        }
+    }
+
+    private static long magic(int[] squares, long stones, long emptySquares) {
+        long sum = 0;
+        for (int index : squares) {
+            int row = index / GomokuBoard.COLS;
+            int col = index % GomokuBoard.COLS;
+            long diagMask = Player150278980.Game.DIAGONAL_MASKS[Player150278980.Game.diagonalIndex(row, col)];
+            long antiDiagMask = Player150278980.Game.ANTI_DIAGONAL_MASKS[Player150278980.Game.antiDiagonalIndex(row, col)];
+            long previousStones = stones;
+            long previousEmpty = emptySquares;
+
+            // Make
+            stones |= 1L << index;
+            emptySquares &= ~(1L << index);
+
+            sum += Player150278980.Game.extractRow(stones, row) ^ Player150278980.Game.extractRow(emptySquares, row) << 8;
+            sum += Player150278980.Game.extractColumn(stones, col) ^ Player150278980.Game.extractColumn(emptySquares, col) << 8;
+            sum += Player150278980.Game.extractDiagonal(stones, diagMask) ^ Player150278980.Game.extractDiagonal(emptySquares, diagMask) << 8;
+            sum += Player150278980.Game.extractDiagonal(stones, antiDiagMask) ^ Player150278980.Game.extractDiagonal(emptySquares, antiDiagMask) << 8;
+
+            // Unmake
+            stones = previousStones;
+            emptySquares = previousEmpty;
+        }
+        return sum;
+    }
+
+    private static long rotated(int[] squares, long stones, long emptySquares) {
+        board = board90 = boardR45 = boardL45 = 0;
+        empty = empty90 = emptyR45 = emptyL45 = 0;
+        for (int index = 0; index < GomokuBoard.ROWS * GomokuBoard.COLS; index++) {
+            if ((stones & (1L << index)) != 0) set(index, true);
+            if ((emptySquares & (1L << index)) != 0) set(index, false);
+        }
+
+        long sum = 0;
+        for (int index : squares) {
+            int row = index / GomokuBoard.COLS;
+            int col = index % GomokuBoard.COLS;
+            boolean wasStone = (board & (1L << index)) != 0;
+            boolean wasEmpty = (empty & (1L << index)) != 0;
+
+            // Make
+            set(index, true);
+            clear(index, false);
+
+            int diagonalIndex = 16 - (0b1111 ^ (7 - row + col)) & 0b1111;
+            int antiDiagonalIndex = (7 - row - col) & 0b1111;
+
+            sum += ((board >>> (row * GomokuBoard.ROWS)) & 0xFFL) ^ ((empty >>> (row * GomokuBoard.ROWS)) & 0xFFL) << 8;
+            sum += ((board90 >>> ((7 - col) * GomokuBoard.COLS)) & 0xFFL) ^ ((empty90 >>> ((7 - col) * GomokuBoard.COLS)) & 0xFFL) << 8;
+
+            long diagMask = ((1L << (diagonalIndex & 0b0111)) - 1L) & 0xFFL;
+            if ((diagonalIndex & 0b1000) != 0) diagMask = (~diagMask) & 0xFFL;
+            int diagShift = (7 - (diagonalIndex & 0b0111)) * GomokuBoard.ROWS;
+            sum += ((boardL45 >>> diagShift) & diagMask) ^ ((emptyL45 >>> diagShift) & diagMask) << 8;
+
+            long antiDiagMask = ((1L << (1 + (7 - (antiDiagonalIndex & 0b0111)))) - 1L) & 0xFFL;
+            if ((antiDiagonalIndex & 0b1000) != 0) antiDiagMask = (~antiDiagMask) & 0xFFL;
+            int antiDiagShift = (7 - (antiDiagonalIndex & 0b0111)) * GomokuBoard.ROWS;
+            sum += ((boardR45 >>> antiDiagShift) & antiDiagMask) ^ ((emptyR45 >>> antiDiagShift) & antiDiagMask) << 8;
+
+            // Unmake
+            if (!wasStone) clear(index, true);
+            if (wasEmpty) set(index, false);
+        }
+        return sum;
+    }
+
+    private static void set(int index, boolean stone) {
+        long square = 1L << index;
+        long square90 = 1L << ((((index >> 3) | (index << 3)) & 63) ^ 56);
+        long squareR45 = 1L << ((index + 8 * (index & 7)) & 63);
+        long squareL45 = 1L << ((index + 8 * ((index & 7) ^ 7)) & 63);
+        if (stone) {
+            board |= square;
+            board90 |= square90;
+            boardR45 |= squareR45;
+            boardL45 |= squareL45;
+        } else {
+            empty |= square;
+            empty90 |= square90;
+            emptyR45 |= squareR45;
+            emptyL45 |= squareL45;
+        }
+    }
+
+    private static void clear(int index, boolean stone) {
+        long square = 1L << index;
+        long square90 = 1L << ((((index >> 3) | (index << 3)) & 63) ^ 56);
+        long squareR45 = 1L << ((index + 8 * (index & 7)) & 63);
+        long squareL45 = 1L << ((index + 8 * ((index & 7) ^ 7)) & 63);
+        if (stone) {
+            board &= ~square;
+            board90 &= ~square90;
+            boardR45 &= ~squareR45;
+            boardL45 &= ~squareL45;
+        } else {
+            empty &= ~square;
+            empty90 &= ~square90;
+            emptyR45 &= ~squareR45;
+            emptyL45 &= ~squareL45;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Move ordering report for both players: nodes and first move cutoff rate at a fixed depth, with the ordering learnt
+ * from cutoffs switched off and on. Player150278980 orders by its evaluation alone, adds killer moves, then adds the
+ * history heuristic; Player150382405 had killer moves already and adds the history heuristic.
+ *
+ * The positions are the quiet positions of the tactical suite, where the search rather than a solver picks the move.
+ * Each player searches deterministically on one thread, without its opening book and with an empty transposition
+ * table, as in TacticalSuite, and without a time limit so every search reaches the depth. The first move cutoff rate
+ * needs -Dgomoku.stats=true, without it the rate reads 0.
+ *
+ * Usage: java MoveOrderingBenchmark [suite] [Player150278980 depth] [Player150382405 depth]
+ */
+public class MoveOrderingBenchmark {
+
+    static final String[] MODES_278980 = {"evaluation", "killers", "killers+history"};
+    static final String[] MODES_382405 = {"killers", "killers+history"};
+
+    public static void main(String[] args) throws IOException {
+        List<TacticalSuite.Position> positions = TacticalSuite.readSuite(
+                Paths.get(args.length > 0 ? args[0] : TacticalSuite.DEFAULT_SUITE));
+        positions.removeIf(position -> !position.name.startsWith("quiet"));
+        int depth278980 = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int depth382405 = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        if (!SearchStats.ENABLED) System.out.println("-Dgomoku.stats=true is not set, cutoff rates read 0");
+        System.out.println("player\tmode\tposition\tmove\tdepth\tnodes\tfirst move cutoffs");
+
+        for (int mode = 0; mode < MODES_278980.length; mode++) {
+            long totalNodes = 0;
+            SearchStats.Counters total = new SearchStats.Counters();
+            for (TacticalSuite.Position position : positions) {
+                Player150278980.transpositionTable.clear();
+                Player150278980 player = new Player150278980(TacticalSuite.game(position), 1);
+                player.setDeterministic(TacticalSuite.SEED);
+                player.useBook = false;
+                player.maxDepth = depth278980;
+                player.timeManager = new TimeManager(TimeManager.UNLIMITED);
+                player.useKillers = mode > 0;
+                player.useHistory = mode > 1;
+
+                Move move = player.chooseMove(position.board, position.color);
+                totalNodes += player.nodes;
+                total.add(player.stats.getTotal());
+                report("Player150278980", MODES_278980[mode], position.name, move, player.depth, player.nodes,
+                        player.stats.getTotal());
+            }
+            report("Player150278980", MODES_278980[mode], "all", null, depth278980, totalNodes, total);
+        }
+
+        for (int mode = 0; mode < MODES_382405.length; mode++) {
+            long totalNodes = 0;
+            SearchStats.Counters total = new SearchStats.Counters();
+            for (TacticalSuite.Position position : positions) {
+                Player150382405 player = new Player150382405();
+                player.setDeterministic(TacticalSuite.SEED);
+                player.maxDepth = depth382405;
+                player.timeManager = new TimeManager(TimeManager.UNLIMITED);
+                player.useHistory = mode > 0;
+
+                Move move = player.chooseMove(position.board, position.color);
+                totalNodes += player.nodes.sum();
+                total.add(player.stats.getTotal());
+                report("Player150382405", MODES_382405[mode], position.name, move, player.depth, player.nodes.sum(),
+                        player.stats.getTotal());
+            }
+            report("Player150382405", MODES_382405[mode], "all", null, depth382405, totalNodes, total);
+        }
+    }
+
+    static void report(String player, String mode, String position, Move move, int depth, long nodes,
+                       SearchStats.Counters counters) {
+        System.out.printf("%s\t%s\t%s\t%s\t%d\t%d\t%.1f%%%n", player, mode, position,
+                move == null ? "-" : "(" + move.row + "," + move.col + ")", depth, nodes,
+                100 * counters.firstMoveCutoffRate());
+    }
+}
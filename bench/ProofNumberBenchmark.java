@@ -0,0 +1,148 @@
+import java.lang.management.ManagementFactory;
+
+/**
+ * Time and memory per solve for the proof-number solver.
+ *
+ * Every position has a known result for X, who is to move. The late positions were checked against an exhaustive
+ * search, the early ones are forced wins from ThreatSpaceBenchmark that the solver takes once a threat is on the
+ * board. Each solve starts from an empty node store and reports the result, the move, the nodes searched, the
+ * time to solve, the store entries it filled and the bytes it allocated.
+ *
+ * Usage: java ProofNumberBenchmark [repetitions]
+ */
+public class ProofNumberBenchmark {
+
+    static final String[] RESULTS = {"LOSS", "DRAW", "WIN", "UNKNOWN"};
+
+    // Expected result for X, then the board
+    static final Object[][] POSITIONS = {
+            // 12 empty
+            {ProofNumberSearch.WIN, new String[]{
+                    "OXXOXXOX",
+                    ".OXOOXXO",
+                    "XOOXOXOX",
+                    "OOXX..O.",
+                    "OOOOX.XO",
+                    "..XO.OXX",
+                    "XOO.XXOO",
+                    ".XX.X.XO",
+            }},
+            // 12 empty
+            {ProofNumberSearch.WIN, new String[]{
+                    "OOXOX.XO",
+                    "O.O.O.XX",
+                    "XO.X.OOX",
+                    "XO.XOXXO",
+                    "OO.XOOXX",
+                    ".OXOXOXO",
+                    "OXXXOO.O",
+                    "XOX.XX.X",
+            }},
+            // 12 empty
+            {ProofNumberSearch.LOSS, new String[]{
+                    "XOO.OOXX",
+                    "X...OOO.",
+                    ".OXXOX.X",
+                    "OXOOXXOX",
+                    "OXXO.XX.",
+                    ".OXXXXOO",
+                    ".X.OOOXO",
+                    "OXOOXXOX",
+            }},
+            // 12 empty
+            {ProofNumberSearch.LOSS, new String[]{
+                    "O.OXXOXX",
+                    "XXOOXOXO",
+                    "XOXXXO.X",
+                    "XOX.XXO.",
+                    "OX..OXXO",
+                    "OX.OOOXO",
+                    "XXO.OO.O",
+                    ".O.XO.XO",
+            }},
+            // 12 empty
+            {ProofNumberSearch.DRAW, new String[]{
+                    "..XOOXXO",
+                    "O..XOXXX",
+                    "OOX.XXO.",
+                    "OX.XOOOX",
+                    "XXOOOXOO",
+                    "OX....OX",
+                    "OXOXOXXX",
+                    "OOX.XXOO",
+            }},
+            // 12 empty
+            {ProofNumberSearch.DRAW, new String[]{
+                    "..XOXOXX",
+                    "XOOXXOO.",
+                    ".XX..XXO",
+                    "XO.XOOOX",
+                    "OX.O.XXX",
+                    "XOOOXXOO",
+                    "OX.XOOO.",
+                    "XXO.OOXO",
+            }},
+            // 14 empty
+            {ProofNumberSearch.DRAW, new String[]{
+                    ".XX.XOXO",
+                    "XOXOOOOX",
+                    "XXXOXOXO",
+                    "XOOX...O",
+                    ".XXXOOXX",
+                    ".OOXOX.X",
+                    ".OX..OOX",
+                    ".O.O.OOX",
+            }},
+            // 49 empty, open three, four-three
+            {ProofNumberSearch.WIN, ThreatSpaceBenchmark.POSITIONS[1]},
+            // 44 empty, four forcing a reply, then a double four depending on it
+            {ProofNumberSearch.WIN, ThreatSpaceBenchmark.POSITIONS[4]},
+    };
+
+    public static void main(String[] args) {
+        int repetitions = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        ProofNumberSearch solver = new ProofNumberSearch();
+
+        System.out.println("store: " + solver.storeBytes() / 1024 + " KB");
+        System.out.println("position\texpected\tresult\tmove\tnodes\ttime-to-solve (ms)\tstore used (KB)\tallocated (bytes)");
+
+        for (int p = 0; p < POSITIONS.length; p++) {
+            String[] rows = (String[]) POSITIONS[p][1];
+            long toMove = 0;
+            long other = 0;
+            for (int row = 0; row < 8; row++) {
+                for (int col = 0; col < 8; col++) {
+                    char c = rows[row].charAt(col);
+                    if (c == 'X') toMove |= 1L << (row * 8 + col);
+                    if (c == 'O') other |= 1L << (row * 8 + col);
+                }
+            }
+
+            // The first solve is the warm up, the rest are timed
+            int result = 0;
+            long time = 0;
+            long allocated = 0;
+            for (int r = 0; r <= repetitions; r++) {
+                solver.clear();
+                long bytes = threads.getCurrentThreadAllocatedBytes();
+                long start = System.nanoTime();
+                result = solver.solve(toMove, other);
+                if (r > 0) {
+                    time += System.nanoTime() - start;
+                    allocated += threads.getCurrentThreadAllocatedBytes() - bytes;
+                }
+            }
+
+            int expected = (Integer) POSITIONS[p][0];
+            int move = solver.getMove();
+            System.out.printf("%d\t%s\t%s\t%s\t%d\t%.2f\t%d\t%d%n", p, RESULTS[expected + 1], RESULTS[result + 1],
+                    move == ProofNumberSearch.NO_MOVE ? "none" : "(" + move / 8 + "," + move % 8 + ")",
+                    solver.nodes(), time / 1e6 / repetitions,
+                    (long) solver.storeUsed() * ProofNumberSearch.ENTRY_BYTES / 1024, allocated / repetitions);
+            if (result != expected) {
+                throw new IllegalStateException("Position " + p + " solved as " + RESULTS[result + 1]);
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+import java.awt.*;
+
+/**
+ * Node counts of the search modes of Player150278980 at equal depth: plain alpha-beta with the full window at every
+ * node and every iteration, principal variation search, and principal variation search with aspiration windows.
+ *
+ * Each mode searches every position to a fixed depth on one thread, deterministically and with a cleared
+ * transposition table, so the node counts repeat and only the search mode differs. The reported ratio is the nodes
+ * of the mode over the nodes of alpha-beta.
+ *
+ * Usage: java PvsBenchmark [depth]
+ */
+public class PvsBenchmark {
+
+    static final long SEED = 0x9F5L;
+    static final String[] MODES = {"alpha-beta", "pvs", "pvs+aspiration"};
+
+    // Move sequences starting with white, white is always the player searching
+    static final int[][][] POSITIONS = {
+            {{4, 4}, {3, 3}, {4, 3}},
+            {{4, 4}, {3, 4}, {3, 3}, {5, 5}, {2, 2}},
+            {{3, 3}, {4, 4}, {3, 4}, {4, 3}, {2, 5}, {5, 2}, {4, 5}},
+            {{4, 4}, {4, 5}, {3, 5}, {5, 3}, {3, 3}, {2, 4}, {5, 4}, {3, 4}, {2, 3}},
+    };
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+
+        System.out.println("depth: " + depth);
+        System.out.println("mode\tposition\tmove\tscore\tnodes\ttime (ms)\tnodes vs alpha-beta");
+
+        long[] baseline = new long[POSITIONS.length + 1];
+        for (int mode = 0; mode < MODES.length; mode++) {
+            long totalTime = 0;
+            long totalNodes = 0;
+            for (int p = 0; p < POSITIONS.length; p++) {
+                Player150278980.transpositionTable.clear();
+
+                Color[][] board = new Color[GomokuBoard.ROWS][GomokuBoard.COLS];
+                Player150278980.Game game = new Player150278980.Game();
+                for (int i = 0; i < POSITIONS[p].length; i++) {
+                    int[] move = POSITIONS[p][i];
+                    board[move[0]][move[1]] = i % 2 == 0 ? Color.white : Color.black;
+                }
+                game.sync(new Color[GomokuBoard.ROWS][GomokuBoard.COLS], Color.white);
+                for (int[] move : POSITIONS[p]) {
+                    game.move(new Move(move[0], move[1]), true);
+                }
+
+                Player150278980 player = new Player150278980(game, 1);
+                player.setDeterministic(SEED);
+                player.useBook = false;
+                player.maxDepth = depth;
+                player.pvs = mode > 0;
+                player.aspiration = mode > 1;
+
+                long start = System.nanoTime();
+                Move move = player.chooseMove(board, Color.white);
+                long time = (System.nanoTime() - start) / 1000000;
+
+                if (player.depth < depth) {
+                    System.out.println(MODES[mode] + "\t" + p + "\tout of time at depth " + player.depth);
+                }
+                if (mode == 0) baseline[p] = player.nodes;
+                totalTime += time;
+                totalNodes += player.nodes;
+                System.out.printf("%s\t%d\t(%d,%d)\t%d\t%d\t%d\t%.2f%n", MODES[mode], p, move.row, move.col,
+                        player.score, player.nodes, time, (double) player.nodes / Math.max(1, baseline[p]));
+            }
+            if (mode == 0) baseline[POSITIONS.length] = totalNodes;
+            System.out.printf("%s\tall\t\t\t%d\t%d\t%.2f%n", MODES[mode], totalNodes, totalTime,
+                    (double) totalNodes / Math.max(1, baseline[POSITIONS.length]));
+        }
+    }
+}
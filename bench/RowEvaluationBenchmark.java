@@ -0,0 +1,52 @@
+import java.util.Random;
+
+/**
+ * Speed report for the line evaluation of Player150278980.Game, comparing the pattern arithmetic with the
+ * ROW_SCORES lookup table it is now replaced by.
+ *
+ * Both evaluate the same random lines, stones and empty squares disjoint as they are on a real board, and the
+ * time per line is reported after a warm up round.
+ *
+ * Usage: java RowEvaluationBenchmark [lines] [rounds]
+ */
+public class RowEvaluationBenchmark {
+
+    public static void main(String[] args) {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 20;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        Random random = new Random(0);
+        long[] rows = new long[lines];
+        long[] empties = new long[lines];
+        for (int i = 0; i < lines; i++) {
+            rows[i] = random.nextInt(1 << 8);
+            empties[i] = random.nextInt(1 << 8) & ~rows[i];
+        }
+
+        System.out.println("round\tpattern (ns/line)\ttable (ns/line)\tspeedup");
+
+        long checksum = 0;
+        for (int round = 0; round <= rounds; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < lines; i++) {
+                checksum += Player150278980.Game.evaluateRowPattern(rows[i], empties[i]);
+            }
+            long pattern = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < lines; i++) {
+                checksum -= Player150278980.Game.ROW_SCORES[(int) ((rows[i] << 8) | empties[i])];
+            }
+            long table = System.nanoTime() - start;
+
+            // Round 0 is the warm up
+            if (round > 0) {
+                System.out.printf("%d\t%.2f\t%.2f\t%.2fx%n", round, (double) pattern / lines, (double) table / lines,
+                        (double) pattern / Math.max(1, table));
+            }
+        }
+
+        // Both evaluate to the same scores, so the checksum cancels out
+        System.out.println("checksum: " + checksum);
+    }
+}
@@ -0,0 +1,76 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Selective search report for Player150278980: what late move reductions and futility pruning gain in speed and what
+ * they cost in accuracy, each switched on alone and together.
+ *
+ * For speed, each mode searches the quiet positions of the tactical suite to a fixed depth, reporting the time and
+ * nodes to reach it. For accuracy, each mode searches every position of the suite at the depth limits of
+ * TacticalSuite until it plays one of the best moves, reporting the positions solved and the depths needed. Every
+ * search is deterministic, on one thread, without the opening book, time limit or a warm transposition table.
+ *
+ * Usage: java SelectiveSearchBenchmark [suite] [depth]
+ */
+public class SelectiveSearchBenchmark {
+
+    static final String[] MODES = {"full", "lmr", "futility", "lmr+futility"};
+
+    public static void main(String[] args) throws IOException {
+        List<TacticalSuite.Position> positions = TacticalSuite.readSuite(
+                Paths.get(args.length > 0 ? args[0] : TacticalSuite.DEFAULT_SUITE));
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+
+        System.out.println("depth: " + depth);
+        System.out.println("mode\ttime-to-depth (ms)\tnodes\tsolved\tsolving depths");
+
+        for (int mode = 0; mode < MODES.length; mode++) {
+            long time = 0;
+            long nodes = 0;
+            for (TacticalSuite.Position position : positions) {
+                if (!position.name.startsWith("quiet")) continue;
+                Player150278980 player = player(mode, position, depth);
+                long start = System.nanoTime();
+                player.chooseMove(position.board, position.color);
+                time += System.nanoTime() - start;
+                nodes += player.nodes;
+            }
+
+            int solved = 0;
+            StringBuilder depths = new StringBuilder();
+            for (TacticalSuite.Position position : positions) {
+                int solvingDepth = -1;
+                for (int limit : TacticalSuite.DEPTHS[0]) {
+                    Player150278980 player = player(mode, position, limit);
+                    Move move = player.chooseMove(position.board, position.color);
+                    if (move != null && position.best.contains(move.row * GomokuBoard.COLS + move.col)) {
+                        solvingDepth = player.depth;
+                        break;
+                    }
+                }
+                if (solvingDepth >= 0) solved++;
+                depths.append(depths.length() == 0 ? "" : " ").append(position.name).append('=')
+                        .append(solvingDepth < 0 ? "unsolved" : String.valueOf(solvingDepth));
+            }
+
+            System.out.printf("%s\t%.2f\t%d\t%d/%d\t%s%n", MODES[mode], time / 1e6, nodes, solved, positions.size(),
+                    depths);
+        }
+    }
+
+    /**
+     * @return A player set up for the mode, to search the position to depth
+     */
+    static Player150278980 player(int mode, TacticalSuite.Position position, int depth) {
+        Player150278980.transpositionTable.clear();
+        Player150278980 player = new Player150278980(TacticalSuite.game(position), 1);
+        player.setDeterministic(TacticalSuite.SEED);
+        player.useBook = false;
+        player.maxDepth = depth;
+        player.timeManager = new TimeManager(TimeManager.UNLIMITED);
+        player.lmr = mode == 1 || mode == 3;
+        player.futility = mode == 2 || mode == 3;
+        return player;
+    }
+}
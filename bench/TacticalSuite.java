@@ -0,0 +1,283 @@
+import java.awt.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tactical suite: time to solution, depth and nodes of both players on positions with known best moves, compared with
+ * a baseline to catch search regressions.
+ *
+ * The positions are read from a text file, bench/tactics.txt by default. Each position is a line "position name", a
+ * line "best" followed by the accepted moves as row,col, and the 8 rows of the board, with X to move and O the
+ * opponent. Blank lines and lines starting with # are ignored.
+ *
+ * Each player runs deterministically from a seed, on one thread and without its opening book, with an empty
+ * transposition table. It searches each position at increasing depth limits until it plays one of the best moves. The
+ * shallowest search that finds a best move gives the depth and the node count, and its fastest of REPETITIONS runs
+ * gives the time to solution.
+ *
+ * The results are checked against a baseline file, bench/tactics-baseline.tsv by default. A position regresses
+ * if it is no longer solved, needs a deeper search, or its nodes grow past the threshold, a fraction over the baseline
+ * set with -Dtactics.nodes (default 0.1). Node counts repeat exactly between runs, so only they are checked; times of a
+ * few milliseconds are too noisy to gate on and are only reported. Any regression exits with status 1. A missing
+ * baseline is written from the run, as is the baseline with --update.
+ *
+ * Only solved positions go into the baseline, and a baseline row without a solving depth is rejected, so an unsolved
+ * position can never become the reference a later run is held to. A row may end with a note on a known problem of the
+ * search in that position, such as a move found at a cost far out of proportion to the position. The note is reported
+ * with the result and kept by --update, so the row is not mistaken for an accepted reference.
+ *
+ * Usage: java TacticalSuite [suite] [baseline] [--update]
+ */
+public class TacticalSuite {
+
+    static final String DEFAULT_SUITE = "bench/tactics.txt";
+    static final String DEFAULT_BASELINE = "bench/tactics-baseline.tsv";
+    static final long SEED = 0x7AC71C5L;
+    static final int REPETITIONS = 3; // Runs of the solving search, the fastest is the time to solution
+
+    static final String[] PLAYERS = {"Player150278980", "Player150382405"};
+    // Depth limits tried by each player, in order. Player150278980 deepens two plies at a time
+    static final int[][] DEPTHS = {{2, 4, 6, 8}, {1, 2, 3, 4, 5}};
+
+    /**
+     * A position of the suite
+     */
+    static class Position {
+        final String name;
+        final Color[][] board = new Color[GomokuBoard.ROWS][GomokuBoard.COLS];
+        final Color color; // Colour of X, white if X moved first
+        final List<Integer> best = new ArrayList<>(); // Accepted moves, as row * COLS + col
+
+        Position(String name, String bestLine, List<String> rows) {
+            this.name = name;
+            for (String move : bestLine.trim().substring("best".length()).trim().split("\\s+")) {
+                String[] square = move.split(",");
+                best.add(Integer.parseInt(square[0]) * GomokuBoard.COLS + Integer.parseInt(square[1]));
+            }
+
+            int x = 0;
+            int o = 0;
+            for (int row = 0; row < GomokuBoard.ROWS; row++) {
+                for (int col = 0; col < GomokuBoard.COLS; col++) {
+                    char c = rows.get(row).charAt(col);
+                    if (c == 'X') x++;
+                    if (c == 'O') o++;
+                }
+            }
+            if (x == o) color = Color.white;
+            else if (o == x + 1) color = Color.black;
+            else throw new IllegalArgumentException("Position " + name + ": X to move needs as many stones as O, or one fewer");
+            Color other = color == Color.white ? Color.black : Color.white;
+
+            for (int row = 0; row < GomokuBoard.ROWS; row++) {
+                for (int col = 0; col < GomokuBoard.COLS; col++) {
+                    char c = rows.get(row).charAt(col);
+                    if (c == 'X') board[row][col] = color;
+                    if (c == 'O') board[row][col] = other;
+                }
+            }
+        }
+    }
+
+    /**
+     * The shallowest search of a player that solved a position
+     */
+    static class Result {
+        int depth = -1; // Depth reached by the solving search, 0 if a solver chose the move, -1 if unsolved
+        long nodes;
+        double time; // Milliseconds
+        Move move;
+        String problem; // Known problem noted in the baseline, null if none
+
+        boolean solved() {
+            return depth >= 0;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean update = false;
+        List<String> paths = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("--update")) update = true;
+            else paths.add(arg);
+        }
+        Path suitePath = Paths.get(paths.size() > 0 ? paths.get(0) : DEFAULT_SUITE);
+        Path baselinePath = Paths.get(paths.size() > 1 ? paths.get(1) : DEFAULT_BASELINE);
+        double nodeThreshold = Double.parseDouble(System.getProperty("tactics.nodes", "0.1"));
+
+        List<Position> positions = readSuite(suitePath);
+        // The old baseline is still read on --update, for its problem notes
+        Map<String, Result> previousBaseline = Files.exists(baselinePath) ? readBaseline(baselinePath) : null;
+        Map<String, Result> baseline = update ? null : previousBaseline;
+
+        System.out.println("player\tposition\tmove\tdepth\tnodes\ttime-to-solution (ms)\tbaseline depth\tbaseline nodes\tbaseline time (ms)\tverdict\tproblem");
+
+        StringBuilder table = new StringBuilder("# player\tposition\tdepth\tnodes\ttime (ms)\tproblem\n");
+        int regressions = 0;
+        int problems = 0;
+        for (int p = 0; p < PLAYERS.length; p++) {
+            for (Position position : positions) {
+                Result result = solve(p, position);
+                String key = PLAYERS[p] + "\t" + position.name;
+                Result noted = previousBaseline == null ? null : previousBaseline.get(key);
+                String problem = noted == null ? null : noted.problem;
+                if (problem != null) problems++;
+                if (result.solved()) {
+                    table.append(String.format("%s\t%d\t%d\t%.2f%s%n", key, result.depth, result.nodes, result.time,
+                            problem == null ? "" : "\t" + problem));
+                }
+
+                String verdict = result.solved() ? "new" : "unsolved";
+                Result previous = baseline == null ? null : baseline.get(key);
+                if (previous != null) {
+                    verdict = regression(result, previous, nodeThreshold);
+                    if (!verdict.equals("ok")) regressions++;
+                }
+                System.out.printf("%s\t%s\t%s\t%d\t%d\t%.2f\t%s\t%s\t%s\t%s\t%s%n", PLAYERS[p], position.name,
+                        result.move == null ? "none" : "(" + result.move.row + "," + result.move.col + ")",
+                        result.depth, result.nodes, result.time,
+                        previous == null ? "-" : String.valueOf(previous.depth),
+                        previous == null ? "-" : String.valueOf(previous.nodes),
+                        previous == null ? "-" : String.format("%.2f", previous.time), verdict,
+                        problem == null ? "-" : problem);
+            }
+        }
+        if (problems > 0) System.out.println(problems + " known problem(s) noted in " + baselinePath);
+
+        if (baseline == null) {
+            Files.write(baselinePath, table.toString().getBytes());
+            System.out.println("Baseline written to " + baselinePath);
+        } else if (regressions > 0) {
+            System.out.println(regressions + " regression(s) against " + baselinePath);
+            System.exit(1);
+        } else {
+            System.out.println("No regressions against " + baselinePath);
+        }
+    }
+
+    /**
+     * @return "ok", or what regressed
+     */
+    static String regression(Result result, Result baseline, double nodeThreshold) {
+        if (!result.solved()) return "REGRESSED: unsolved";
+        if (result.depth > baseline.depth) return "REGRESSED: depth";
+        if (result.nodes > baseline.nodes * (1 + nodeThreshold)) return "REGRESSED: nodes";
+        return "ok";
+    }
+
+    /**
+     * Search a position at increasing depth limits until the player plays a best move
+     *
+     * @param player The index of the player in PLAYERS
+     * @return The shallowest search that solved the position
+     */
+    static Result solve(int player, Position position) {
+        Result result = new Result();
+        for (int limit : DEPTHS[player]) {
+            Result attempt = search(player, position, limit);
+            if (attempt.move == null
+                    || !position.best.contains(attempt.move.row * GomokuBoard.COLS + attempt.move.col)) {
+                result.move = attempt.move;
+                continue;
+            }
+
+            for (int i = 1; i < REPETITIONS; i++) {
+                attempt.time = Math.min(attempt.time, search(player, position, limit).time);
+            }
+            return attempt;
+        }
+        return result;
+    }
+
+    static Result search(int player, Position position, int limit) {
+        Result result = new Result();
+        if (player == 0) {
+            Player150278980.transpositionTable.clear();
+            Player150278980 searcher = new Player150278980(game(position), 1);
+            searcher.setDeterministic(SEED);
+            searcher.useBook = false;
+            searcher.maxDepth = limit;
+
+            long start = System.nanoTime();
+            result.move = searcher.chooseMove(position.board, position.color);
+            result.time = (System.nanoTime() - start) / 1e6;
+            result.depth = searcher.depth;
+            result.nodes = searcher.nodes;
+        } else {
+            Player150382405 searcher = new Player150382405();
+            searcher.setDeterministic(SEED);
+            searcher.maxDepth = limit;
+
+            long start = System.nanoTime();
+            result.move = searcher.chooseMove(position.board, position.color);
+            result.time = (System.nanoTime() - start) / 1e6;
+            result.nodes = searcher.nodes.sum();
+            result.depth = searcher.depth;
+        }
+        return result;
+    }
+
+    /**
+     * @return The position as a game of Player150278980, replayed alternating from the side that moved first
+     */
+    static Player150278980.Game game(Position position) {
+        List<Move> mine = new ArrayList<>();
+        List<Move> theirs = new ArrayList<>();
+        for (int row = 0; row < GomokuBoard.ROWS; row++) {
+            for (int col = 0; col < GomokuBoard.COLS; col++) {
+                if (position.board[row][col] == position.color) mine.add(new Move(row, col));
+                else if (position.board[row][col] != null) theirs.add(new Move(row, col));
+            }
+        }
+
+        Player150278980.Game game = new Player150278980.Game();
+        game.sync(new Color[GomokuBoard.ROWS][GomokuBoard.COLS], position.color);
+        List<Move> first = position.color == Color.white ? mine : theirs;
+        List<Move> second = position.color == Color.white ? theirs : mine;
+        for (int i = 0; i < first.size(); i++) {
+            game.move(first.get(i), true);
+            if (i < second.size()) game.move(second.get(i), true);
+        }
+        return game;
+    }
+
+    static List<Position> readSuite(Path path) throws IOException {
+        List<Position> positions = new ArrayList<>();
+        List<String> lines = new ArrayList<>();
+        for (String line : Files.readAllLines(path)) {
+            if (!line.trim().isEmpty() && !line.startsWith("#")) lines.add(line.trim());
+        }
+        for (int i = 0; i < lines.size(); i += 2 + GomokuBoard.ROWS) {
+            if (!lines.get(i).startsWith("position ") || !lines.get(i + 1).startsWith("best ")) {
+                throw new IllegalArgumentException("Expected a position and its best moves at: " + lines.get(i));
+            }
+            positions.add(new Position(lines.get(i).substring("position ".length()).trim(), lines.get(i + 1),
+                    lines.subList(i + 2, i + 2 + GomokuBoard.ROWS)));
+        }
+        return positions;
+    }
+
+    static Map<String, Result> readBaseline(Path path) throws IOException {
+        Map<String, Result> baseline = new HashMap<>();
+        for (String line : Files.readAllLines(path)) {
+            if (line.startsWith("#") || line.trim().isEmpty()) continue;
+            String[] fields = line.split("\t");
+            Result result = new Result();
+            result.depth = Integer.parseInt(fields[2]);
+            result.nodes = Long.parseLong(fields[3]);
+            result.time = Double.parseDouble(fields[4]);
+            if (fields.length > 5 && !fields[5].trim().isEmpty()) result.problem = fields[5].trim();
+            if (!result.solved()) {
+                throw new IllegalArgumentException("Unsolved position in baseline " + path + ": " + line);
+            }
+            baseline.put(fields[0] + "\t" + fields[1], result);
+        }
+        return baseline;
+    }
+}
@@ -0,0 +1,99 @@
+import static java.lang.Long.numberOfLeadingZeros;
+
+/**
+ * Time-to-solve report for the threat-space search in Player150382405.
+ *
+ * Every position is a forced win for X, who is to move. The threat-space search is run on each position and the
+ * first move of the winning sequence, the nodes searched and the time to solve are reported.
+ *
+ * Usage: java ThreatSpaceBenchmark [repetitions]
+ */
+public class ThreatSpaceBenchmark {
+
+    // X is the attacker to move, O the defender
+    static final String[][] POSITIONS = {
+            // open four, immediate five
+            {
+                    "........",
+                    "........",
+                    "..XXXX..",
+                    "........",
+                    "...OO...",
+                    "....O...",
+                    "........",
+                    "........",
+            },
+            // open three, four-three
+            {
+                    "........",
+                    "........",
+                    "...XX...",
+                    "........",
+                    "..X.....",
+                    "..X..O..",
+                    "....O.O.",
+                    "........",
+            },
+            // double open three
+            {
+                    "........",
+                    "........",
+                    "..X.X...",
+                    "........",
+                    "....X...",
+                    "....X...",
+                    "O.....O.",
+                    ".O.O....",
+            },
+            // four-four on crossing lines
+            {
+                    "........",
+                    ".X......",
+                    "..X..O..",
+                    "...X.O..",
+                    "........",
+                    ".XXX....",
+                    "O.....O.",
+                    "..O.....",
+            },
+            // four forcing a reply, then a double four depending on it
+            {
+                    "O..X...O",
+                    "...X....",
+                    "...X..O.",
+                    "OXX.....",
+                    "....X...",
+                    "....X..O",
+                    "O...X...",
+                    "....O..O",
+            },
+    };
+
+    public static void main(String[] args) {
+        int repetitions = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+
+        System.out.println("position\tmove\tnodes\ttime-to-solve (us)");
+
+        for (int p = 0; p < POSITIONS.length; p++) {
+            long attacker = 0;
+            long defender = 0;
+            for (int row = 0; row < 8; row++) {
+                for (int col = 0; col < 8; col++) {
+                    char c = POSITIONS[p][row].charAt(col);
+                    if (c == 'X') attacker |= 0x8000000000000000L >>> (row * 8 + col);
+                    if (c == 'O') defender |= 0x8000000000000000L >>> (row * 8 + col);
+                }
+            }
+
+            Player150382405.ThreatSpaceSearch search = new Player150382405.ThreatSpaceSearch();
+            long move = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < repetitions; i++) move = search.search(attacker, defender);
+            long time = (System.nanoTime() - start) / 1000 / repetitions;
+
+            String square = move == 0 ? "none"
+                    : "(" + numberOfLeadingZeros(move) / 8 + "," + numberOfLeadingZeros(move) % 8 + ")";
+            System.out.println(p + "\t" + square + "\t" + search.nodes() + "\t" + time);
+        }
+    }
+}
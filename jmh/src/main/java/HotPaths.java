@@ -0,0 +1,305 @@
+import java.awt.*;
+import java.util.Random;
+import java.util.function.LongSupplier;
+
+/**
+ * The workloads measured by the JMH benchmarks in gomoku.jmh.
+ *
+ * The players live in the default package, which classes in a named package cannot refer to, and JMH does not
+ * generate benchmarks for classes in the default package. So the benchmarks look these workloads up by name once,
+ * in their setup, and call them through LongSupplier. Each call does one operation on inputs cycled from arrays
+ * made up front, and returns a value depending on the result so the JIT cannot drop the work.
+ *
+ * Boards for Player150382405 are MSB-first bitboards (bit 63 - (row * 8 + col)), for Player150278980 LSB-first
+ * (bit row * 8 + col).
+ */
+public class HotPaths {
+    private static final int INPUTS = 1024; // Inputs cycled through, a power of two
+    private static final int STONES = 20; // Stones on the random middle game positions
+    private static final long SEED = 0x150278980L ^ 0x150382405L;
+
+    /**
+     * @param name A hot path, of Player150382405: terminal, expand, evaluate, findFours, findThrees, rotations, or of
+     *             Player150278980: moveUndo, evaluateRow, evaluateMove, tableAdd, tableGet
+     * @return One operation of that hot path
+     */
+    public static LongSupplier create(String name) {
+        Random random = new Random(SEED);
+        long[] mine = new long[INPUTS];
+        long[] theirs = new long[INPUTS];
+        for (int i = 0; i < INPUTS; i++) {
+            long[] position = position(random);
+            mine[i] = position[0];
+            theirs[i] = position[1];
+        }
+        int[] squares = new int[INPUTS];
+        for (int i = 0; i < INPUTS; i++) {
+            squares[i] = random.nextInt(GomokuBoard.ROWS * GomokuBoard.COLS);
+        }
+
+        switch (name) {
+            case "terminal":
+            case "expand":
+            case "findFours":
+            case "findThrees":
+            case "rotations":
+                return player150382405(name, mine, theirs, squares);
+            case "evaluate":
+                return evaluate(mine, theirs, squares);
+            case "moveUndo":
+            case "evaluateRow":
+            case "evaluateMove":
+                return game(name, mine[0], theirs[0], random);
+            case "tableAdd":
+            case "tableGet":
+                return table(name, random);
+            default:
+                throw new IllegalArgumentException("Unknown hot path: " + name);
+        }
+    }
+
+    /**
+     * A fixed-depth search of one of the standard positions, LazySmpBenchmark.POSITIONS, by a fresh player
+     *
+     * @param player Player150382405 or Player150278980
+     * @param position The index of the position
+     * @param depth The depth searched
+     * @return One search, returning the nodes it searched
+     */
+    public static LongSupplier search(String player, int position, int depth) {
+        Color[][] board = new Color[GomokuBoard.ROWS][GomokuBoard.COLS];
+        int[][] moves = LazySmpBenchmark.POSITIONS[position];
+        for (int i = 0; i < moves.length; i++) {
+            board[moves[i][0]][moves[i][1]] = i % 2 == 0 ? Color.white : Color.black;
+        }
+
+        switch (player) {
+            case "Player150382405":
+                return () -> {
+                    Player150382405 searcher = new Player150382405();
+                    long[] bitboards = searcher.colorsToLong(board, Color.white);
+                    searcher.maxDepth = depth;
+                    searcher.timeManager.start(64 - Long.bitCount(bitboards[0]));
+                    searcher.search(bitboards[0], bitboards[1], 0);
+                    return searcher.nodes.sum();
+                };
+            case "Player150278980":
+                return () -> {
+                    Player150278980.Game game = new Player150278980.Game();
+                    game.sync(new Color[GomokuBoard.ROWS][GomokuBoard.COLS], Color.white);
+                    for (int[] move : moves) {
+                        game.move(new Move(move[0], move[1]), true);
+                    }
+                    Player150278980 searcher = new Player150278980(game, 1);
+                    searcher.maxDepth = depth;
+                    searcher.useBook = false;
+                    searcher.chooseMove(board, Color.white);
+                    return searcher.nodes;
+                };
+            default:
+                throw new IllegalArgumentException("Unknown player: " + player);
+        }
+    }
+
+    /**
+     * @return What to do before each search so they all start from the same state
+     */
+    public static Runnable reset(String player) {
+        if (player.equals("Player150278980")) {
+            return Player150278980.transpositionTable::clear;
+        }
+        return () -> {
+        };
+    }
+
+    private static LongSupplier player150382405(String name, long[] mine, long[] theirs, int[] squares) {
+        Player150382405 player = new Player150382405();
+        long[] spaces = new long[INPUTS];
+        long[] stones = new long[INPUTS];
+        long[] moves = new long[INPUTS];
+        long[][] playerTransforms = new long[INPUTS][];
+        long[][] opponentTransforms = new long[INPUTS][];
+        for (int i = 0; i < INPUTS; i++) {
+            stones[i] = Long.reverse(mine[i]);
+            spaces[i] = stones[i] | Long.reverse(theirs[i]);
+            moves[i] = 0x8000000000000000L >>> squares[i];
+            playerTransforms[i] = transforms(player, stones[i]);
+            opponentTransforms[i] = transforms(player, spaces[i] ^ stones[i]);
+        }
+        int[] index = {0};
+
+        switch (name) {
+            case "terminal":
+                return () -> {
+                    int i = index[0]++ & (INPUTS - 1);
+                    return player.terminal(spaces[i], stones[i], moves[i], true);
+                };
+            case "expand":
+                Player150382405.MovePicker picker = new Player150382405.MovePicker();
+                return () -> {
+                    int i = index[0]++ & (INPUTS - 1);
+                    picker.init(spaces[i], stones[i], true, 0, 0, 0, null, true);
+                    long sum = 0;
+                    for (long move = picker.next(); move != 0; move = picker.next()) sum += move;
+                    return sum;
+                };
+            case "findFours":
+                return () -> {
+                    int i = index[0]++ & (INPUTS - 1);
+                    return player.findFours(playerTransforms[i], opponentTransforms[i]);
+                };
+            case "findThrees":
+                return () -> {
+                    int i = index[0]++ & (INPUTS - 1);
+                    return player.findThrees(playerTransforms[i], opponentTransforms[i]);
+                };
+            default: // rotations
+                return () -> {
+                    int i = index[0]++ & (INPUTS - 1);
+                    return player.antidiagonal(spaces[i]) ^ player.clockwise(spaces[i])
+                            ^ player.anticlockwise(spaces[i]);
+                };
+        }
+    }
+
+    private static long[] transforms(Player150382405 player, long bitboard) {
+        return new long[]{bitboard, player.antidiagonal(bitboard), player.anticlockwise(bitboard),
+                player.clockwise(bitboard)};
+    }
+
+    /**
+     * Places a stone on an empty square, evaluates and takes it back, as Player150382405 does at every node
+     */
+    private static LongSupplier evaluate(long[] mine, long[] theirs, int[] squares) {
+        long player = Long.reverse(mine[0]);
+        long opponent = Long.reverse(theirs[0]);
+        Player150382405.LineCounter counter = new Player150382405.LineCounter(player, opponent);
+        long[] moves = new long[INPUTS];
+        for (int i = 0, j = 0; i < INPUTS; j++) {
+            long move = 0x8000000000000000L >>> squares[j % INPUTS];
+            if (((player | opponent) & move) == 0) moves[i++] = move;
+        }
+        int[] index = {0};
+        return () -> {
+            long move = moves[index[0]++ & (INPUTS - 1)];
+            counter.place(move, true);
+            int value = counter.evaluate();
+            counter.remove(move, true);
+            return value;
+        };
+    }
+
+    private static LongSupplier game(String name, long mine, long theirs, Random random) {
+        // Replay the position, alternating from whichever side has stones left
+        Player150278980.Game game = new Player150278980.Game();
+        game.sync(new Color[GomokuBoard.ROWS][GomokuBoard.COLS], Color.white);
+        long me = mine;
+        long other = theirs;
+        while ((me | other) != 0) {
+            boolean mineNext = game.getRound() % 2 == 0 ? me != 0 : other == 0;
+            long stones = mineNext ? me : other;
+            int square = Long.numberOfTrailingZeros(stones);
+            game.move(new Move(square / GomokuBoard.COLS, square % GomokuBoard.COLS), true);
+            if (mineNext) me &= me - 1;
+            else other &= other - 1;
+        }
+
+        int[] empty = new int[INPUTS];
+        long emptyBoard = game.getEmptyBoard();
+        for (int i = 0; i < INPUTS; i++) {
+            int square;
+            do {
+                square = random.nextInt(GomokuBoard.ROWS * GomokuBoard.COLS);
+            } while ((emptyBoard & (1L << square)) == 0);
+            empty[i] = square;
+        }
+        long[] rows = new long[INPUTS];
+        long[] empties = new long[INPUTS];
+        for (int i = 0; i < INPUTS; i++) {
+            empties[i] = random.nextInt(256);
+            rows[i] = random.nextInt(256) & ~empties[i];
+        }
+        int[] index = {0};
+
+        switch (name) {
+            case "moveUndo":
+                return () -> {
+                    game.move(empty[index[0]++ & (INPUTS - 1)]);
+                    long hash = game.getHash();
+                    game.undo();
+                    return hash;
+                };
+            case "evaluateRow":
+                return () -> {
+                    int i = index[0]++ & (INPUTS - 1);
+                    return game.evaluateRow(rows[i], empties[i]);
+                };
+            default: // evaluateMove
+                return () -> {
+                    int square = empty[index[0]++ & (INPUTS - 1)];
+                    return game.evaluateMove(square / GomokuBoard.COLS, square % GomokuBoard.COLS);
+                };
+        }
+    }
+
+    private static LongSupplier table(String name, Random random) {
+        Player150278980.TranspositionTable table =
+                new Player150278980.TranspositionTable(Player150278980.TRANSPOSITION_TABLE_MB);
+        long[] hashes = new long[INPUTS];
+        for (int i = 0; i < INPUTS; i++) {
+            hashes[i] = random.nextLong();
+        }
+        // Half the lookups find an entry
+        for (int i = 0; i < INPUTS; i += 2) {
+            table.add(hashes[i], Player150278980.TranspositionTable.EXACT, i, 4, i & 63);
+        }
+        int[] index = {0};
+
+        if (name.equals("tableAdd")) {
+            return () -> {
+                int i = index[0]++ & (INPUTS - 1);
+                table.add(hashes[i], Player150278980.TranspositionTable.EXACT, i, 4, i & 63);
+                return i;
+            };
+        }
+        return () -> table.get(hashes[index[0]++ & (INPUTS - 1)]);
+    }
+
+    /**
+     * @return A random middle game position without a five, the stones of the player to move and of the other
+     * player, LSB-first
+     */
+    private static long[] position(Random random) {
+        while (true) {
+            long[] stones = new long[2];
+            for (int i = 0; i < STONES; i++) {
+                long empty = ~(stones[0] | stones[1]);
+                int skip = random.nextInt(Long.bitCount(empty));
+                for (int j = 0; j < skip; j++) empty &= empty - 1;
+                stones[i % 2] |= Long.lowestOneBit(empty);
+            }
+            if (!hasFive(stones[0]) && !hasFive(stones[1])) {
+                return stones;
+            }
+        }
+    }
+
+    private static boolean hasFive(long stones) {
+        for (int row = 0; row < GomokuBoard.ROWS; row++) {
+            for (int col = 0; col < GomokuBoard.COLS; col++) {
+                int[][] directions = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+                for (int[] direction : directions) {
+                    int count = 0;
+                    for (int i = 0; i < 5; i++) {
+                        int r = row + i * direction[0];
+                        int c = col + i * direction[1];
+                        if (r < 0 || r >= GomokuBoard.ROWS || c < 0 || c >= GomokuBoard.COLS) break;
+                        if ((stones & (1L << (r * GomokuBoard.COLS + c))) != 0) count++;
+                    }
+                    if (count == 5) return true;
+                }
+            }
+        }
+        return false;
+    }
+}
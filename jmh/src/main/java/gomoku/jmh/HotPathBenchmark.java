@@ -0,0 +1,35 @@
+package gomoku.jmh;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Time per call of the evaluation, move generation, terminal detection and transposition table paths of both
+ * players, on fixed pseudo-random middle game positions. The names are listed in HotPaths.create.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HotPathBenchmark {
+
+    @Param({"terminal", "expand", "evaluate", "findFours", "findThrees", "rotations",
+            "moveUndo", "evaluateRow", "evaluateMove", "tableAdd", "tableGet"})
+    public String path;
+
+    private LongSupplier operation;
+
+    @Setup
+    public void setup() {
+        operation = Workloads.create(path);
+    }
+
+    @Benchmark
+    public long run() {
+        return operation.getAsLong();
+    }
+}
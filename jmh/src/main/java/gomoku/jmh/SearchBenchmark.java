@@ -0,0 +1,58 @@
+package gomoku.jmh;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Fixed-depth searches of the standard positions of LazySmpBenchmark, one thread, from an empty transposition table.
+ * Reports searches per second and, in the nodes counter, nodes per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SearchBenchmark {
+
+    @Param({"Player150278980", "Player150382405"})
+    public String player;
+
+    @Param({"0", "1", "2", "3"})
+    public int position;
+
+    @Param({"4"})
+    public int depth;
+
+    private LongSupplier search;
+    private Runnable reset;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Nodes {
+        public long nodes;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            nodes = 0;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        search = Workloads.search(player, position, depth);
+        reset = Workloads.reset(player);
+    }
+
+    @Setup(Level.Invocation)
+    public void resetTable() {
+        reset.run();
+    }
+
+    @Benchmark
+    public void search(Nodes counter) {
+        counter.nodes += search.getAsLong();
+    }
+}
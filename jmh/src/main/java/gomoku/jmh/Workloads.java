@@ -0,0 +1,34 @@
+package gomoku.jmh;
+
+import java.lang.reflect.Method;
+import java.util.function.LongSupplier;
+
+/**
+ * Looks up the workloads of HotPaths, which is in the default package and so cannot be referred to from here.
+ */
+final class Workloads {
+
+    private Workloads() {
+    }
+
+    static LongSupplier create(String name) {
+        return (LongSupplier) invoke("create", new Class<?>[]{String.class}, name);
+    }
+
+    static LongSupplier search(String player, int position, int depth) {
+        return (LongSupplier) invoke("search", new Class<?>[]{String.class, int.class, int.class}, player, position, depth);
+    }
+
+    static Runnable reset(String player) {
+        return (Runnable) invoke("reset", new Class<?>[]{String.class}, player);
+    }
+
+    private static Object invoke(String name, Class<?>[] types, Object... args) {
+        try {
+            Method method = Class.forName("HotPaths").getMethod(name, types);
+            return method.invoke(null, args);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create workload " + name, e);
+        }
+    }
+}
@@ -0,0 +1,316 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * An opening book of positions searched offline, shared by both players.
+ *
+ * The book is a file of fixed size records sorted by key, memory mapped and binary searched in place, so opening it
+ * reads nothing and a lookup touches a handful of pages. Positions are keyed by a Zobrist hash of the stones of the
+ * player to move and of the other player, taken as the smallest over the 8 symmetries of the board, so one record
+ * answers every mirrored or rotated copy of a position and either colour. Moves are stored in the frame of that
+ * smallest hash and mapped back on lookup.
+ *
+ * File layout, big endian:
+ * header: MAGIC (4 bytes), VERSION (4), record count (8)
+ * records: key (8), score (4), move (1), depth (1), unused (2)
+ *
+ * Boards are bitboards with square = row * 8 + col at bit square. The book is built by tools/OpeningBookGenerator.
+ */
+public class OpeningBook {
+    static final int MAGIC = 0x474D4B42; // "GMKB"
+    static final int VERSION = 1;
+    static final int NO_MOVE = -1;
+
+    static final int HEADER_BYTES = 16;
+    static final int RECORD_BYTES = 16;
+
+    // Where the players look for the book, the gomoku.book system property overrides it
+    static final String DEFAULT_PATH = "book/opening.book";
+
+    private static final int SQUARES = 64;
+    private static final int SYMMETRIES = 8;
+    // Fixed seed, keys are part of the file format
+    private static final long KEY_SEED = 0x5DEECE66DL;
+
+    // Zobrist keys of the player to move and of the other player
+    private static final long[] TO_MOVE_KEYS = new long[SQUARES];
+    private static final long[] OTHER_KEYS = new long[SQUARES];
+    // Where each square goes under each symmetry, and back
+    private static final int[][] SYMMETRY_SQUARES = new int[SYMMETRIES][SQUARES];
+    private static final int[][] INVERSE_SQUARES = new int[SYMMETRIES][SQUARES];
+
+    private static final OpeningBook EMPTY = new OpeningBook(ByteBuffer.allocate(HEADER_BYTES), 0);
+    private static OpeningBook defaultBook = null;
+
+    static {
+        Random random = new Random(KEY_SEED);
+        for (int square = 0; square < SQUARES; square++) {
+            TO_MOVE_KEYS[square] = random.nextLong();
+            OTHER_KEYS[square] = random.nextLong();
+        }
+
+        // Bit 2 transposes, bit 0 flips the rows and bit 1 flips the columns
+        for (int symmetry = 0; symmetry < SYMMETRIES; symmetry++) {
+            for (int row = 0; row < 8; row++) {
+                for (int col = 0; col < 8; col++) {
+                    int r = (symmetry & 4) != 0 ? col : row;
+                    int c = (symmetry & 4) != 0 ? row : col;
+                    if ((symmetry & 1) != 0) r = 7 - r;
+                    if ((symmetry & 2) != 0) c = 7 - c;
+                    SYMMETRY_SQUARES[symmetry][row * 8 + col] = r * 8 + c;
+                    INVERSE_SQUARES[symmetry][r * 8 + c] = row * 8 + col;
+                }
+            }
+        }
+    }
+
+    private final ByteBuffer records;
+    private final long count;
+
+    private OpeningBook(ByteBuffer records, long count) {
+        this.records = records;
+        this.count = count;
+    }
+
+    /**
+     * Maps a book file
+     *
+     * @param path The book file
+     * @return The book
+     * @throws IOException If the file cannot be mapped or is not a book of this version
+     */
+    static OpeningBook open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not an opening book: " + path);
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException("Opening book version " + buffer.getInt(4) + ", expected " + VERSION);
+            }
+            long count = buffer.getLong(8);
+            if (HEADER_BYTES + count * RECORD_BYTES != buffer.capacity()) {
+                throw new IOException("Truncated opening book: " + path);
+            }
+            return new OpeningBook(buffer, count);
+        }
+    }
+
+    /**
+     * The book the players use, mapped on first use. A missing or unreadable book is an empty book, so the
+     * players then simply search every move.
+     *
+     * @return The default book
+     */
+    static synchronized OpeningBook getDefault() {
+        if (defaultBook == null) {
+            Path path = Paths.get(System.getProperty("gomoku.book", DEFAULT_PATH));
+            try {
+                defaultBook = Files.exists(path) ? open(path) : EMPTY;
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+                defaultBook = EMPTY;
+            }
+        }
+        return defaultBook;
+    }
+
+    /**
+     * @return The number of positions in the book
+     */
+    long size() {
+        return count;
+    }
+
+    /**
+     * Looks up the book move of a position
+     *
+     * @param toMove The stones of the player to move
+     * @param other The stones of the other player
+     * @return The square of the book move, row * 8 + col, or NO_MOVE if the position is not in the book
+     */
+    int lookup(long toMove, long other) {
+        int symmetry = canonicalSymmetry(toMove, other);
+        long index = find(hash(toMove, other, symmetry));
+        if (index < 0) {
+            return NO_MOVE;
+        }
+
+        int square = INVERSE_SQUARES[symmetry][records.get(recordOffset(index) + 12)];
+        // Guard against a key collision giving a move on a taken square
+        if (((toMove | other) & (1L << square)) != 0) {
+            return NO_MOVE;
+        }
+        return square;
+    }
+
+    /**
+     * @return The score the book move was searched to, or 0 if the position is not in the book
+     */
+    int getScore(long toMove, long other) {
+        long index = find(key(toMove, other));
+        return index < 0 ? 0 : records.getInt(recordOffset(index) + 8);
+    }
+
+    /**
+     * @return The depth the book move was searched to, or 0 if the position is not in the book
+     */
+    int getDepth(long toMove, long other) {
+        long index = find(key(toMove, other));
+        return index < 0 ? 0 : records.get(recordOffset(index) + 13);
+    }
+
+    /**
+     * The key of a position, the same for all of its symmetries
+     *
+     * @param toMove The stones of the player to move
+     * @param other The stones of the other player
+     * @return The smallest of the hashes of the position under each symmetry
+     */
+    static long key(long toMove, long other) {
+        return hash(toMove, other, canonicalSymmetry(toMove, other));
+    }
+
+    private static int canonicalSymmetry(long toMove, long other) {
+        long key = Long.MAX_VALUE;
+        int canonical = 0;
+        for (int symmetry = 0; symmetry < SYMMETRIES; symmetry++) {
+            long hash = hash(toMove, other, symmetry);
+            if (hash < key) {
+                key = hash;
+                canonical = symmetry;
+            }
+        }
+        return canonical;
+    }
+
+    private static long hash(long toMove, long other, int symmetry) {
+        long hash = 0;
+        for (long stones = toMove; stones != 0; stones &= stones - 1) {
+            hash ^= TO_MOVE_KEYS[SYMMETRY_SQUARES[symmetry][Long.numberOfTrailingZeros(stones)]];
+        }
+        for (long stones = other; stones != 0; stones &= stones - 1) {
+            hash ^= OTHER_KEYS[SYMMETRY_SQUARES[symmetry][Long.numberOfTrailingZeros(stones)]];
+        }
+        return hash;
+    }
+
+    /**
+     * Binary searches the records for a key
+     *
+     * @return The index of the record, or -1 if there is none
+     */
+    private long find(long key) {
+        long low = 0;
+        long high = count - 1;
+        while (low <= high) {
+            long middle = (low + high) >>> 1;
+            long middleKey = records.getLong(recordOffset(middle));
+            if (middleKey < key) {
+                low = middle + 1;
+            } else if (middleKey > key) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private static int recordOffset(long index) {
+        return (int) (HEADER_BYTES + index * RECORD_BYTES);
+    }
+
+    /**
+     * Collects positions and writes them out as a book file
+     */
+    static class Writer {
+        private long[] keys = new long[64];
+        private int[] scores = new int[64];
+        private byte[] moves = new byte[64];
+        private byte[] depths = new byte[64];
+        private int count = 0;
+        private Map<Long, Integer> indices = new HashMap<>();
+
+        /**
+         * Adds a position, replacing a symmetric copy of it already added if this one was searched deeper
+         *
+         * @param toMove The stones of the player to move
+         * @param other The stones of the other player
+         * @param square The book move, row * 8 + col
+         * @param score The score of the move
+         * @param depth The depth the move was searched to
+         */
+        void add(long toMove, long other, int square, int score, int depth) {
+            int symmetry = canonicalSymmetry(toMove, other);
+            long key = hash(toMove, other, symmetry);
+
+            Integer existing = indices.get(key);
+            if (existing != null && depths[existing] >= depth) {
+                return;
+            }
+            int index = existing != null ? existing : count;
+            if (existing == null) {
+                if (count == keys.length) {
+                    keys = Arrays.copyOf(keys, count * 2);
+                    scores = Arrays.copyOf(scores, count * 2);
+                    moves = Arrays.copyOf(moves, count * 2);
+                    depths = Arrays.copyOf(depths, count * 2);
+                }
+                indices.put(key, count++);
+            }
+            keys[index] = key;
+            scores[index] = score;
+            moves[index] = (byte) SYMMETRY_SQUARES[symmetry][square];
+            depths[index] = (byte) depth;
+        }
+
+        /**
+         * @return The number of positions added
+         */
+        int size() {
+            return count;
+        }
+
+        /**
+         * Writes the positions sorted by key
+         *
+         * @param path The book file, replaced if it exists
+         * @throws IOException If the file cannot be written
+         */
+        void write(Path path) throws IOException {
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + count * RECORD_BYTES);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(count);
+            for (int i : order) {
+                buffer.putLong(keys[i]).putInt(scores[i]).put(moves[i]).put(depths[i]).putShort((short) 0);
+            }
+            buffer.flip();
+
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        }
+    }
+}
@@ -1,4 +1,12 @@
 import java.awt.*;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 
 /**
@@ -10,18 +18,22 @@ import java.util.*;
 /**
  * Features
  * - Negamax (Minimax) search with Alpha Beta pruning
- * - Iterative deepening
+ * - Principal variation search, later moves are searched with a null window
+ * - Iterative deepening with aspiration windows
  * - Time limit
  * - Transposition table
+ * - Lazy SMP, helper threads search the same root and share the transposition table
  * - Heuristic evaluation function
  * - Randomly choose out of competing best moves
- * - Move ordering TODO: killer heuristic
+ * - Move ordering by the evaluation after the move, killer moves and the history heuristic
  * - Bitboard representation
+ * - Proof-number solver for late positions and positions with threats
+ * - Pondering, searching the opponent's replies on their time (-Dgomoku.ponder=true)
  *
  */
 public class Player150278980 extends GomokuPlayer {
 
-    static TranspositionTable transpositionTable = new TranspositionTable();
+    static TranspositionTable transpositionTable = TranspositionTable.createDefault();
 
     // Constants
     static final byte PLAYER_NONE = 0;
@@ -30,55 +42,374 @@ public class Player150278980 extends GomokuPlayer {
 
     static final int SCORE_GAME_WIN = 500000000;
     static final int SCORE_GAME_LOSE = -500000000;
+    static final int SCORE_FORCED_WIN = 250000000; // A win by forcing moves found past the search horizon
     static final int SCORE_STRAIGHT_FOUR = 50000;
     static final int SCORE_FOUR = 8000;
     static final int SCORE_THREE = 4000;
     static final int SCORE_DEADEND = -20;
+    static final int SCORE_INFINITY = 1000000000; // Search bounds, past every score and safe to negate
+
+    static final int ASPIRATION_WINDOW = 1000; // Half width of the first window around the last iteration's score
+    static final int ASPIRATION_GROWTH = 4; // Widening of a side of the window that failed
+    static final int ASPIRATION_MAX = SCORE_STRAIGHT_FOUR; // Half width past which a failed side is opened fully
+
+    static final int KILLER_SLOTS = 2; // Killer moves kept per ply
+    static final int KILLER_PRIORITY = 500; // Ordering bonus of a killer move, an eighth of an open three
+    static final int HISTORY_SHIFT = 2; // History scores are shifted down by this to give their ordering bonus
+    static final int HISTORY_MAX_PRIORITY = 500; // Cap of the ordering bonus from history
+    static final int HISTORY_LIMIT = 1 << 20; // History score at which the whole table is halved
+
+    static final int LMR_MIN_DEPTH = 3; // Depth left from which late moves are reduced
+    static final int LMR_MIN_MOVE = 1; // Moves searched in full before the rest are reduced
+    static final int LMR_REDUCTION = 1; // Plies a late move is reduced by
+    // By depth left, how far below alpha the evaluation after a move may fall before the move is pruned
+    static final int[] FUTILITY_MARGINS = {0, SCORE_THREE / 8, SCORE_FOUR};
 
     static final int TIME_LIMIT = 10; // Amount of time in seconds
     static final float TIME_THRESH = 0.9f;
 
+    static final int TRANSPOSITION_TABLE_MB = 32; // Size of the transposition table in megabytes
+    static final int SEARCH_THREADS = Runtime.getRuntime().availableProcessors(); // Threads searching each move
+    static final int HELPER_JITTER = 16; // Random priority noise helpers add to vary their move order
+
+    static final int QUIESCENCE_NODES = 64; // Node budget of the forcing move search at each leaf
+    static final boolean QUIESCENCE_THREES = false; // Whether the leaf search plays open threes as well as fours
+    static final int SOLVER_EMPTY_SQUARES = 16; // Empty squares at or below which the proof-number solver takes over
+    static final boolean PONDER = Boolean.getBoolean("gomoku.ponder"); // Off by default, it takes the opponent's CPU
+
     private Game game = null;
     private Random random;
-    private long timerEnd = 0;
+    TimeManager timeManager = new TimeManager((long) (TIME_LIMIT * 1000 * TIME_THRESH)); // Shared with helpers, UNLIMITED to search to maxDepth
+
+    private boolean deterministic = false; // Seeded random choices and no random tie-breaks, for reproducible runs
+    private int threads;
+    private int helperId = 0; // 0 for the main thread, helpers are numbered from 1
+    private volatile boolean stopped = false;
+    private Thread thread = null;
+
+    private ThreatSearch threatSearch = new ThreatSearch(QUIESCENCE_NODES, QUIESCENCE_THREES);
+    private ProofNumberSearch solver = null; // Made on first use, helpers never solve
+
+    long nodes = 0; // Nodes searched during the last move, including helpers
+    final SearchStats stats = new SearchStats("Player150278980"); // Report of the last move, with -Dgomoku.stats
+    private final SearchStats.Counters counters = new SearchStats.Counters(); // This thread's, with -Dgomoku.stats
+    int score = 0; // Score of the last move, from the deepest completed iteration
+    int depth = 0; // Deepest completed iteration of the last move
+    int maxDepth = 200; // Deepest iteration of iterative deepening
+    boolean useBook = true; // Whether to play book moves when the position is in the opening book
+    boolean pvs = true; // Whether to search moves after the first with a null window, else with the full window
+    boolean aspiration = true; // Whether iterations start from a window around the last score, else the full window
+    boolean useKillers = true; // Whether killer moves are ordered first among moves of similar evaluation
+    boolean useHistory = true; // Whether the history of cutoffs adds to the ordering
+    boolean lmr = true; // Whether late moves are searched with reduced depth first
+    boolean futility = true; // Whether moves near the leaves whose evaluation is far below alpha are skipped
+    boolean useForcedMoves = true; // Whether a threat on the board restricts the moves to those answering it
+    int solverEmptySquares = SOLVER_EMPTY_SQUARES; // Empty squares at or below which the solver takes over
+
+    boolean ponder = PONDER; // Whether to search on the opponent's time
+    private Player150278980 ponderer = null; // Searching while the opponent thinks, null when not pondering
+    private int prediction = TranspositionTable.NO_MOVE; // The reply a ponderer expects, from its deepest iteration
+    // The ponder before the last move, reported through stats: its deepest iteration (0 if there was none), its
+    // nodes, and whether the opponent played the reply it expected
+    private int ponderDepth = 0;
+    private long ponderNodes = 0;
+    private boolean ponderHit = false;
 
     public Player150278980() {
+        this(SEARCH_THREADS);
+    }
+
+    /**
+     * @param threads The number of threads to search with, 1 disables lazy SMP
+     */
+    public Player150278980(int threads) {
         this.random = new Random();
+        this.threads = Math.max(1, threads);
     }
 
     public Player150278980(Game game) {
-        this();
+        this(game, SEARCH_THREADS);
+    }
+
+    public Player150278980(Game game, int threads) {
+        this(threads);
         this.game = game;
     }
 
-    private void resetTime() {
-        timerEnd = System.currentTimeMillis() + (long) (TIME_LIMIT * 1000 * TIME_THRESH);
+    private Player150278980(Game game, int helperId, TimeManager timeManager, int maxDepth) {
+        this(game, 1);
+        this.helperId = helperId;
+        this.timeManager = timeManager;
+        this.maxDepth = maxDepth;
     }
 
-    private boolean hasTime() {
-        return System.currentTimeMillis() < timerEnd;
+    /**
+     * Make the player reproducible: random choices are drawn from the seed, and of competing best moves the first
+     * one searched is played. With a single thread the same position then gives the same move and node count.
+     *
+     * @param seed The seed of the random choices
+     */
+    void setDeterministic(long seed) {
+        this.random = new Random(seed);
+        this.deterministic = true;
     }
 
     private void checkTime() throws OutOfTimeException {
-        if (!hasTime()) throw new OutOfTimeException();
+        if (stopped || timeManager.stopped()) throw new OutOfTimeException();
     }
 
-    private ArrayList<TreeSet<State>> movesMap = new ArrayList<>();
-    private ArrayList<Move> results = new ArrayList<>();
+    /**
+     * Start the helper threads, each with a private copy of the game
+     * @return The helpers searching
+     */
+    private Player150278980[] startHelpers() {
+        Player150278980[] helpers = new Player150278980[threads - 1];
+        for (int i = 0; i < helpers.length; i++) {
+            Player150278980 helper = new Player150278980(game.copy(), i + 1, timeManager, maxDepth);
+            if (deterministic) helper.setDeterministic(random.nextLong());
+            Thread thread = new Thread(helper::searchHelper, "Player150278980-helper-" + (i + 1));
+            thread.setDaemon(true);
+            helper.thread = thread;
+            copySettings(helper);
+            helpers[i] = helper;
+            thread.start();
+        }
+        return helpers;
+    }
 
-    private static final Comparator<State> MOVE_COMPARATOR = new Comparator<State>() {
-        @Override
-        public int compare(State o1, State o2) {
-            int score = o1.priority - o2.priority;
-            if (score != 0) return score;
+    /**
+     * Copy the search switches to a helper or the ponderer, so they search the way this player does
+     * @param searcher The player searching alongside this one
+     */
+    private void copySettings(Player150278980 searcher) {
+        searcher.pvs = pvs;
+        searcher.aspiration = aspiration;
+        searcher.useKillers = useKillers;
+        searcher.useHistory = useHistory;
+        searcher.lmr = lmr;
+        searcher.futility = futility;
+        searcher.useForcedMoves = useForcedMoves;
+    }
+
+    /**
+     * Stop the helper threads and wait for them to unwind
+     * @param helpers The helpers searching
+     */
+    private void stopHelpers(Player150278980[] helpers) {
+        for (Player150278980 helper : helpers) {
+            helper.stopped = true;
+        }
+        for (Player150278980 helper : helpers) {
+            try {
+                helper.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            nodes += helper.nodes;
+            counters.add(helper.counters);
+        }
+    }
+
+    /**
+     * Sum the counters of this thread and the helpers, for the statistics of an iteration. The helpers are still
+     * searching, so their counters are read as they stand, a little behind at worst.
+     *
+     * @param helpers The helpers searching
+     * @return The running totals of the move over every search thread
+     */
+    private SearchStats.Counters sumCounters(Player150278980[] helpers) {
+        SearchStats.Counters totals = new SearchStats.Counters();
+        totals.add(counters);
+        for (Player150278980 helper : helpers) {
+            totals.add(helper.counters);
+        }
+        return totals;
+    }
+
+    /**
+     * Iterative deepening for helper threads, results only reach the main thread through the transposition table.
+     * Odd helpers start two plies deeper than the main thread so the threads spread over different depths.
+     */
+    private void searchHelper() {
+        int depth = 2 + 2 * (helperId % 2);
+        try {
+            while (depth <= maxDepth) {
+                ensureMoveStack(depth);
+                resultCount = 0;
+                negamax(depth, -SCORE_INFINITY, SCORE_INFINITY, true);
+                game.reset();
+                depth += 2;
+            }
+        } catch (OutOfTimeException e) {
+            // Out of time or stopped by the main thread
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Start pondering after our move: a thread searches the position with the opponent to move, by iterative
+     * deepening like the main search. Every reply gets searched and the results reach the next move through the
+     * transposition table, so the search after the opponent's move starts warm, deepest on the expected reply. The
+     * next move still starts a new search of the table: the ponder's entries stay readable, but most are for replies
+     * that were not played and would otherwise keep the next search's own entries out. The ponder stops on its own
+     * after the opponent's time in case no move follows. It follows every move we play, whether from the book, the
+     * solver or the search.
+     */
+    private void startPondering() {
+        if (!ponder || game.isFinished()) return;
+
+        TimeManager ponderTime = new TimeManager((long) (TIME_LIMIT * 1000));
+        ponderer = new Player150278980(game.copy(), 0, ponderTime, maxDepth);
+        if (deterministic) ponderer.setDeterministic(random.nextLong());
+        copySettings(ponderer);
+        transpositionTable.newSearch();
+        ponderTime.start(Long.bitCount(game.getEmptyBoard()));
+
+        Thread thread = new Thread(ponderer::ponderSearch, "Player150278980-ponder");
+        thread.setDaemon(true);
+        ponderer.thread = thread;
+        thread.start();
+    }
+
+    /**
+     * Stop pondering and wait for the ponderer to unwind
+     */
+    private void stopPondering() {
+        ponderDepth = 0;
+        ponderNodes = 0;
+        prediction = TranspositionTable.NO_MOVE;
+        if (ponderer == null) return;
+
+        ponderer.stopped = true;
+        try {
+            ponderer.thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ponderDepth = ponderer.depth;
+        ponderNodes = ponderer.nodes;
+        prediction = ponderer.prediction;
+        ponderer = null;
+    }
+
+    /**
+     * Iterative deepening of the ponderer, from the position after our move
+     */
+    private void ponderSearch() {
+        int depth = 2;
+        try {
+            while (depth <= maxDepth) {
+                ensureMoveStack(depth);
+                resultCount = 0;
+                negamax(depth, -SCORE_INFINITY, SCORE_INFINITY, true);
+                if (resultCount > 0) prediction = results[0];
+                this.depth = depth;
+                game.reset();
+                depth += 2;
+            }
+        } catch (OutOfTimeException e) {
+            // Stopped by the opponent's move, or out of their time
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Per ply move lists used by negamax, indexed by the depth left - 1
+    private int[][] moveSquares = new int[0][];
+    private int[][] moveScores = new int[0][];
+
+    // Moves that caused cutoffs, learnt by this thread. Killers are indexed by the ply from the root, history by the
+    // side to move (0 for us) and square
+    private int[][] killers = new int[0][];
+    private final int[][] history = new int[2][GomokuBoard.ROWS * GomokuBoard.COLS];
+
+    // Best moves at the root, as squares
+    private int[] results = new int[GomokuBoard.ROWS * GomokuBoard.COLS];
+    private int resultCount = 0;
+
+    /**
+     * Make sure there is a move list for every ply up to depth
+     * @param depth The depth of the next search
+     */
+    private void ensureMoveStack(int depth) {
+        if (moveSquares.length >= depth) return;
+
+        int previous = moveSquares.length;
+        moveSquares = Arrays.copyOf(moveSquares, depth);
+        moveScores = Arrays.copyOf(moveScores, depth);
+        killers = Arrays.copyOf(killers, depth);
+        for (int i = previous; i < depth; i++) {
+            moveSquares[i] = new int[GomokuBoard.ROWS * GomokuBoard.COLS];
+            moveScores[i] = new int[GomokuBoard.ROWS * GomokuBoard.COLS];
+            killers[i] = new int[KILLER_SLOTS];
+            Arrays.fill(killers[i], TranspositionTable.NO_MOVE);
+        }
+    }
 
-            return (o1.getLastMove().row * GomokuBoard.COLS + o1.getLastMove().col)
-                    - (o2.getLastMove().row * GomokuBoard.COLS + o2.getLastMove().col);
+    /**
+     * Age the move ordering learnt from cutoffs before a new move: the killers are forgotten, as the plies now
+     * start a move later, and the history is halved so recent cutoffs count for more
+     */
+    private void ageOrdering() {
+        for (int[] slots : killers) {
+            Arrays.fill(slots, TranspositionTable.NO_MOVE);
+        }
+        for (int[] scores : history) {
+            for (int square = 0; square < scores.length; square++) {
+                scores[square] >>= 1;
+            }
         }
-    };
+    }
+
+    /**
+     * Learn from a beta cutoff: the move becomes the first killer of its ply, and its history grows by the square
+     * of the depth left, so cutoffs near the root count for more
+     *
+     * @param ply The ply from the root of the node
+     * @param player The player who made the move
+     * @param square The move
+     * @param depth The depth left at the node
+     */
+    private void storeCutoff(int ply, byte player, int square, int depth) {
+        int[] slots = killers[ply];
+        if (slots[0] != square) {
+            System.arraycopy(slots, 0, slots, 1, KILLER_SLOTS - 1);
+            slots[0] = square;
+        }
+
+        int[] scores = history[player == PLAYER_ME ? 0 : 1];
+        scores[square] += depth * depth;
+        if (scores[square] >= HISTORY_LIMIT) {
+            for (int[] side : history) {
+                for (int i = 0; i < side.length; i++) {
+                    side[i] >>= 1;
+                }
+            }
+        }
+    }
 
     /**
      * Searches the game tree recursively
+     *
+     * No objects are created per node: moves are kept as square and score in the preallocated per ply
+     * arrays, picked by a partial selection sort, and made and unmade in place on the game.
+     *
+     * Below the root, the best move stored in the transposition table for the position is searched first. The other
+     * moves are ordered by the evaluation after them, plus bonuses for the killer moves of the ply and the history of
+     * the square below the root, where the root keeps the evaluation alone to break ties between equal moves.
+     *
+     * With pvs the first move is searched with the full window and the rest with a null window around alpha,
+     * searching again with the full window the moves that turn out better.
+     *
+     * Below the root, moves that make or block a four are always searched in full. With lmr, other moves after the
+     * first LMR_MIN_MOVE are searched LMR_REDUCTION plies shallower with a null window, and again at full depth if
+     * they beat alpha. With futility, at the last FUTILITY_MARGINS.length - 1 plies, other moves whose evaluation
+     * after the move is still more than the margin below alpha are not searched.
+     *
+     * With useForcedMoves, a node under a threat only generates the moves that answer it, as any other move loses,
+     * so forcing lines are searched with a branching factor near one.
+     *
      * @param depth The depth left to search, decrements each level
      * @param alpha The alpha cutoff
      * @param beta The beta cutoff
@@ -89,35 +420,62 @@ public class Player150278980 extends GomokuPlayer {
     private int negamax(int depth, int alpha, int beta, boolean isRoot) throws OutOfTimeException {
         // Check we have time
         checkTime();
+        nodes++;
+        if (SearchStats.ENABLED) counters.nodes++;
 
         int prevAlpha = alpha;
 
         // Check the transposition table, we might have a better approximation for this node already stored
-        TranspositionTable.Transposition transposition = transpositionTable.get(game.getState().getHash());
-        if (transposition != null && transposition.depth >= depth && !isRoot) {
-            if (transposition.flag == TranspositionTable.EXACT) {
-                return transposition.score;
-            } else if (transposition.flag == TranspositionTable.LOWER) {
-                alpha = Math.max(alpha, transposition.score);
-            } else if (transposition.flag == TranspositionTable.UPPER) {
-                beta = Math.min(beta, transposition.score);
+        long transposition = transpositionTable.get(game.getHash());
+        if (SearchStats.ENABLED) {
+            counters.tableProbes++;
+            if (transposition != TranspositionTable.MISS) counters.tableHits++;
+        }
+        if (transposition != TranspositionTable.MISS && TranspositionTable.getDepth(transposition) >= depth && !isRoot) {
+            int transpositionScore = TranspositionTable.getScore(transposition);
+            byte flag = TranspositionTable.getFlag(transposition);
+            if (flag == TranspositionTable.EXACT) {
+                if (SearchStats.ENABLED) counters.tableCutoffs++;
+                return transpositionScore;
+            } else if (flag == TranspositionTable.LOWER) {
+                alpha = Math.max(alpha, transpositionScore);
+            } else if (flag == TranspositionTable.UPPER) {
+                beta = Math.min(beta, transpositionScore);
             }
             if (alpha >= beta) {
-                return transposition.score;
+                if (SearchStats.ENABLED) counters.tableCutoffs++;
+                return transpositionScore;
             }
         }
 
         // The player who's turn it is
         byte player = game.getNextPlayer();
 
-        if (depth == 0 || game.isFinished()) {
+        if (game.isFinished()) {
             return player == PLAYER_ME ? game.getScore() : -game.getScore();
         }
+        if (depth == 0) {
+            if (SearchStats.ENABLED) counters.evaluations++;
+            return quiesce(player);
+        }
 
         // MOVE GENERATION
         //////////////////////////////
-        TreeSet<State> moves = movesMap.get(depth - 1);
-        moves.clear();
+        int[] squares = moveSquares[depth - 1];
+        int[] priorities = moveScores[depth - 1];
+        int count = 0;
+        int ply = game.getSearchPly();
+        int[] plyKillers = killers[ply];
+        int[] squareHistory = history[player == PLAYER_ME ? 0 : 1];
+        // The move that was best or cut off when the table last searched the position, in this board's frame. The
+        // best move of a node that failed low is only the least bad of upper bounds, so it is not trusted
+        int tableMove = transposition == TranspositionTable.MISS || isRoot
+                || TranspositionTable.getFlag(transposition) == TranspositionTable.UPPER
+                ? TranspositionTable.NO_MOVE : TranspositionTable.getMove(transposition);
+        if (tableMove != TranspositionTable.NO_MOVE) tableMove = game.fromCanonical(tableMove);
+        int tableIndex = -1;
+        long attacker = player == PLAYER_ME ? game.getMeBoard() : ~game.getEmptyBoard() & ~game.getMeBoard();
+        long defender = ~game.getEmptyBoard() & ~attacker;
 
         long boardMoves = ~game.getEmptyBoard();
         // Smudge bits without overflowing to the next row
@@ -126,55 +484,121 @@ public class Player150278980 extends GomokuPlayer {
         boardMoves = ((boardMoves | (boardMoves << GomokuBoard.COLS)) | boardMoves >>> GomokuBoard.COLS);
         // Mask again to remove taken moves
         boardMoves &= game.getEmptyBoard();
+        // Under a threat only the moves answering it can avoid losing
+        if (useForcedMoves) {
+            long forcedMoves = ThreatSearch.forcedMoves(attacker, defender);
+            if (forcedMoves != 0) boardMoves = forcedMoves;
+        }
+        // At the root of a symmetric position only one of each set of symmetric moves needs searching
+        if (isRoot) boardMoves &= game.getSymmetricMoves();
 
-        long mask = 1L;
-        for (int i = 0; i < GomokuBoard.ROWS; i++) {
-            for (int j = 0; j < GomokuBoard.COLS; j++) {
-                if ((boardMoves & mask) != 0) {
-                    Move move = new Move(i, j);
-                    State state = game.move(move);
-                    game.undo();
+        while (boardMoves != 0) {
+            int square = Long.numberOfTrailingZeros(boardMoves);
+            boardMoves &= boardMoves - 1;
 
-                    state.priority = player == PLAYER_ME ? state.score : -state.score;
-                    moves.add(state);
-                }
-                mask <<= 1;
+            game.move(square);
+            int score = game.getScore();
+            game.undo();
+
+            int priority = player == PLAYER_ME ? score : -score;
+            if (helperId != 0) priority += random.nextInt(HELPER_JITTER);
+            if (!isRoot) {
+                if (useKillers && (square == plyKillers[0] || square == plyKillers[1])) priority += KILLER_PRIORITY;
+                if (useHistory) priority += Math.min(squareHistory[square] >> HISTORY_SHIFT, HISTORY_MAX_PRIORITY);
             }
+
+            if (square == tableMove) tableIndex = count;
+            squares[count] = square;
+            priorities[count] = priority;
+            count++;
         }
 
         // NEGAMAX TREE SEARCH
         ///////////////////////////////
-        int bestScore = Integer.MIN_VALUE;
+        int bestScore = -SCORE_INFINITY;
         int bestPriority = Integer.MIN_VALUE;
+        int bestMove = TranspositionTable.NO_MOVE;
+
+        boolean selective = !isRoot && Math.abs(alpha) < SCORE_FORCED_WIN;
+        boolean prune = selective && futility && depth < FUTILITY_MARGINS.length;
 
-        Iterator<State> it = moves.descendingIterator();
-        while (it.hasNext()) { // limit number of nodes at early game?
-            State state = it.next();
-            game.move(state);
-            int score = -negamax(depth - 1, -beta, -alpha, false);
+        for (int i = 0; i < count; i++) { // limit number of nodes at early game?
+            // Partial selection sort, only the moves we get to are sorted, after the table's move
+            int best = i;
+            if (i == 0 && tableIndex >= 0) {
+                best = tableIndex;
+            } else {
+                for (int j = i + 1; j < count; j++) {
+                    if (priorities[j] > priorities[best] || (priorities[j] == priorities[best] && squares[j] > squares[best])) {
+                        best = j;
+                    }
+                }
+            }
+            swapMoves(squares, priorities, i, best);
+
+            int square = squares[i];
+            int priority = priorities[i];
+            boolean quiet = selective && i > 0 && !ThreatSearch.isFourMove(attacker, defender, square);
+
+            game.move(square);
+            if (prune && quiet) {
+                int evaluation = player == PLAYER_ME ? game.getScore() : -game.getScore();
+                if (evaluation + FUTILITY_MARGINS[depth] <= alpha) {
+                    game.undo();
+                    bestScore = Math.max(bestScore, evaluation + FUTILITY_MARGINS[depth]);
+                    continue;
+                }
+            }
+
+            int score = 0;
+            boolean searchFull = true;
+            if (lmr && quiet && depth >= LMR_MIN_DEPTH && i >= LMR_MIN_MOVE) {
+                // Reduced null window, the move is only searched in full if it beats alpha
+                score = -negamax(depth - 1 - LMR_REDUCTION, -alpha - 1, -alpha, false);
+                searchFull = score > alpha;
+            }
+            if (!searchFull) {
+                // Failed low at the reduced depth
+            } else if (i == 0 || !pvs) {
+                score = -negamax(depth - 1, -beta, -alpha, false);
+            } else {
+                // Null window, only proves the move is no better than the best so far, which it usually is
+                score = -negamax(depth - 1, -alpha - 1, -alpha, false);
+                if (score > alpha && score < beta) {
+                    score = -negamax(depth - 1, -beta, -alpha, false);
+                }
+            }
             game.undo();
 
             if (score > bestScore) {
                 bestScore = score;
+                bestMove = square;
 
                 if (isRoot) {
-                    bestPriority = state.priority;
-                    results.clear();
-                    results.add(state.getLastMove());
+                    bestPriority = priority;
+                    resultCount = 0;
+                    results[resultCount++] = square;
                 }
 
                 if (bestScore > alpha) {
                     alpha = bestScore;
-                    if (beta <= alpha) break;
+                    if (beta <= alpha) {
+                        if (SearchStats.ENABLED) {
+                            counters.cutoffs++;
+                            if (i == 0) counters.firstMoveCutoffs++;
+                        }
+                        if (!isRoot) storeCutoff(ply, player, square, depth);
+                        break;
+                    }
                 }
             } else if (score == bestScore) {
                 if (isRoot) {
-                    if (state.priority > bestPriority) {
-                        results.clear();
-                        bestPriority = state.priority;
+                    if (priority > bestPriority) {
+                        resultCount = 0;
+                        bestPriority = priority;
                     }
-                    if (state.priority == bestPriority) {
-                        results.add(state.getLastMove());
+                    if (priority == bestPriority) {
+                        results[resultCount++] = square;
                     }
                 }
             }
@@ -188,78 +612,253 @@ public class Player150278980 extends GomokuPlayer {
             flag = TranspositionTable.LOWER;
         }
 
-        transpositionTable.add(
-                game.getState().getHash(),
-                new TranspositionTable.Transposition(flag, bestScore, depth)
-        );
+        transpositionTable.add(game.getHash(), flag, bestScore, depth,
+                bestMove == TranspositionTable.NO_MOVE ? bestMove : game.toCanonical(bestMove));
 
         // Return the best score
         return bestScore;
     }
 
+    /**
+     * Scores a leaf, first looking past the horizon for a win by forcing moves for the player to move
+     *
+     * @param player The player whose turn it is
+     * @return Returns the score of the leaf for the player to move
+     */
+    private int quiesce(byte player) {
+        long me = game.getMeBoard();
+        long other = ~game.getEmptyBoard() & ~me;
+
+        boolean forcedWin = player == PLAYER_ME ? threatSearch.wins(me, other) : threatSearch.wins(other, me);
+        if (forcedWin) {
+            return SCORE_FORCED_WIN;
+        }
+        return player == PLAYER_ME ? game.getScore() : -game.getScore();
+    }
+
+    private static void swapMoves(int[] squares, int[] priorities, int i, int j) {
+        int square = squares[i];
+        squares[i] = squares[j];
+        squares[j] = square;
+
+        int priority = priorities[i];
+        priorities[i] = priorities[j];
+        priorities[j] = priority;
+    }
+
+    /**
+     * Looks the current position up in the opening book
+     *
+     * @return The book move, or null if the position is not in the book
+     */
+    private Move bookMove() {
+        long me = game.getMeBoard();
+        long other = ~game.getEmptyBoard() & ~me;
+        int square = game.getNextPlayer() == PLAYER_ME
+                ? OpeningBook.getDefault().lookup(me, other)
+                : OpeningBook.getDefault().lookup(other, me);
+        if (square == OpeningBook.NO_MOVE) return null;
+        return new Move(square / GomokuBoard.COLS, square % GomokuBoard.COLS);
+    }
+
     @Override
     public Move chooseMove(Color[][] board, Color me) {
         if (game == null) game = new Game();
 
+        stopPondering();
+        long empty = game.getEmptyBoard();
         game.sync(board, me);
+        long opponentMove = empty & ~game.getEmptyBoard();
+        ponderHit = opponentMove != 0 && Long.numberOfTrailingZeros(opponentMove) == prediction;
+
+        if (useBook) {
+            Move bookMove = bookMove();
+            if (bookMove != null) {
+                game.move(bookMove, true);
+                startPondering();
+                return bookMove;
+            }
+        }
 
-        if (game.getState().getRound() == 0) {
+        if (game.getRound() == 0) {
             Move move = new Move(GomokuBoard.ROWS / 2, GomokuBoard.COLS / 2);
             game.move(move, true);
+            startPondering();
             return move;
         }
 
-        resetTime();
+        timeManager.start(Long.bitCount(game.getEmptyBoard()));
+        transpositionTable.newSearch();
+        nodes = 0;
+        score = 0;
+        this.depth = 0;
+        counters.clear();
+        ageOrdering();
+        stats.startMove();
+        stats.ponder(ponderDepth, ponderNodes, ponderHit);
+
+        Move solvedMove = solve();
+        if (solvedMove != null) {
+            stats.endMove(counters);
+            game.move(solvedMove, true);
+            startPondering();
+            return solvedMove;
+        }
+
+        Player150278980[] helpers = startHelpers();
 
         int depth = 2;
         Move bestMove = null;
 
         do {
             try {
-                // System.out.println("======== Depth " + depth + " ========");
-                for (int i = 0; i < depth; i++) {
-                    if (movesMap.size() <= i) movesMap.add(new TreeSet<>(MOVE_COMPARATOR));
-                }
-                results.clear();
-                negamax(depth, Integer.MIN_VALUE, Integer.MAX_VALUE, true);
-                if (!results.isEmpty()) { // Oh dear! If results are empty we are in trouble
-                    bestMove = results.get(random.nextInt(results.size()));
+                ensureMoveStack(depth);
+                int iterationScore = aspirationSearch(depth);
+                if (resultCount > 0) { // Oh dear! If results are empty we are in trouble
+                    int square = results[deterministic ? 0 : random.nextInt(resultCount)];
+                    bestMove = new Move(square / GomokuBoard.COLS, square % GomokuBoard.COLS);
+                    score = iterationScore;
+                    this.depth = depth;
+                    timeManager.completed(results[0]); // The first of equal moves, random ties are not instability
                 }
                 game.reset();
-                //System.out.println("Best moves: " + results);
-                //System.out.println("============================");
+                stats.endIteration(depth, true, sumCounters(helpers));
             } catch (OutOfTimeException e) {
                 // Out of time
                 game.reset();
-                //System.out.println("============================");
+                stats.endIteration(depth, false, sumCounters(helpers));
                 break;
             } catch (RuntimeException e) {
                 e.printStackTrace();
                 break;
             }
             depth += 2; // Increase depth if we have time
-        } while(hasTime() && depth < 200);
+        } while(depth <= maxDepth && timeManager.startIteration());
 
-        if (bestMove != null) game.move(bestMove, true);
+        stopHelpers(helpers);
+        stats.endMove(counters);
+
+        if (bestMove != null) {
+            game.move(bestMove, true);
+            startPondering();
+        }
         return bestMove;
     }
 
+    /**
+     * Searches the root of an iteration. With aspiration, and a score from the last iteration that is not a win or a
+     * loss, the search starts from a window around that score. A side of the window that fails is widened in stages,
+     * then opened fully, and the root searched again until the score falls inside.
+     *
+     * @param depth The depth of the iteration
+     * @return The score of the root
+     * @throws OutOfTimeException When we are approaching the time limit we bail with an exception
+     */
+    private int aspirationSearch(int depth) throws OutOfTimeException {
+        int alphaWindow = ASPIRATION_WINDOW;
+        int betaWindow = ASPIRATION_WINDOW;
+        boolean useWindow = aspiration && this.depth > 0 && Math.abs(score) < SCORE_FORCED_WIN;
+        int alpha = useWindow ? score - alphaWindow : -SCORE_INFINITY;
+        int beta = useWindow ? score + betaWindow : SCORE_INFINITY;
+
+        while (true) {
+            resultCount = 0;
+            int iterationScore = negamax(depth, alpha, beta, true);
+            game.reset();
+
+            if (iterationScore <= alpha && alpha > -SCORE_INFINITY) {
+                alphaWindow *= ASPIRATION_GROWTH;
+                alpha = alphaWindow > ASPIRATION_MAX ? -SCORE_INFINITY : score - alphaWindow;
+            } else if (iterationScore >= beta && beta < SCORE_INFINITY) {
+                betaWindow *= ASPIRATION_GROWTH;
+                beta = betaWindow > ASPIRATION_MAX ? SCORE_INFINITY : score + betaWindow;
+            } else {
+                return iterationScore;
+            }
+        }
+    }
+
+    /**
+     * Hands the position to the proof-number solver when few empty squares are left or either player has a threat
+     *
+     * @return The winning move if the solver proved a win, a drawing move if it proved a draw, otherwise null
+     */
+    private Move solve() {
+        long me = game.getMeBoard();
+        long other = ~game.getEmptyBoard() & ~me;
+        if (!ProofNumberSearch.shouldSolve(me, other, solverEmptySquares)) return null;
+
+        if (solver == null) solver = new ProofNumberSearch();
+        int result = solver.solve(me, other);
+        nodes = solver.nodes();
+        if ((result != ProofNumberSearch.WIN && result != ProofNumberSearch.DRAW)
+                || solver.getMove() == ProofNumberSearch.NO_MOVE) {
+            return null;
+        }
+
+        score = result == ProofNumberSearch.WIN ? SCORE_GAME_WIN : 0;
+        return new Move(solver.getMove() / GomokuBoard.COLS, solver.getMove() % GomokuBoard.COLS);
+    }
+
+    /**
+     * The game board and its incremental evaluation.
+     *
+     * Moves are made and unmade in place. Everything that cannot be recomputed from the move itself (line
+     * scores, total score, hash, whether the game finished) is kept on flat per ply stacks, so making a move
+     * never allocates.
+     */
     public static class Game {
+        static final int MAX_PLY = GomokuBoard.ROWS * GomokuBoard.COLS;
+
+        // Score of every line, indexed by (stones << 8) | empty, a line is at most 8 squares
+        static final int[] ROW_SCORES = new int[1 << 16];
+
+        // Lines are gathered into 8 bits by a multiply, each square keeping its column as its bit
+        private static final long FILE_A = 0x0101010101010101L;
+        private static final long COLUMN_MAGIC = 0x0102040810204080L; // Moves row r of file A to bit 56 + r
+        private static final long DIAGONAL_MAGIC = 0x0101010101010101L; // Sums the rows into the top byte
+
+        // The squares of each diagonal and anti-diagonal, by the index of their score
+        static final long[] DIAGONAL_MASKS = new long[GomokuBoard.ROWS + GomokuBoard.COLS];
+        static final long[] ANTI_DIAGONAL_MASKS = new long[GomokuBoard.ROWS + GomokuBoard.COLS];
+
+        // The 8 symmetries of the board, where each square goes under each, 0 being the identity
+        static final int SYMMETRIES = 8;
+        static final int[][] SYMMETRY_SQUARES = new int[SYMMETRIES][GomokuBoard.ROWS * GomokuBoard.COLS];
+        // Where each square comes from under each symmetry, the inverse of SYMMETRY_SQUARES
+        static final int[][] INVERSE_SQUARES = new int[SYMMETRIES][GomokuBoard.ROWS * GomokuBoard.COLS];
+
+        static {
+            for (int row = 0; row < 1 << 8; row++) {
+                for (int empty = 0; empty < 1 << 8; empty++) {
+                    ROW_SCORES[(row << 8) | empty] = evaluateRowPattern(row, empty);
+                }
+            }
+
+            for (int row = 0; row < GomokuBoard.ROWS; row++) {
+                for (int col = 0; col < GomokuBoard.COLS; col++) {
+                    DIAGONAL_MASKS[diagonalIndex(row, col)] |= 1L << (row * GomokuBoard.COLS + col);
+                    ANTI_DIAGONAL_MASKS[antiDiagonalIndex(row, col)] |= 1L << (row * GomokuBoard.COLS + col);
+
+                    // Bit 2 transposes, bit 0 flips the rows and bit 1 flips the columns
+                    for (int symmetry = 0; symmetry < SYMMETRIES; symmetry++) {
+                        int r = (symmetry & 4) != 0 ? col : row;
+                        int c = (symmetry & 4) != 0 ? row : col;
+                        if ((symmetry & 1) != 0) r = GomokuBoard.ROWS - 1 - r;
+                        if ((symmetry & 2) != 0) c = GomokuBoard.COLS - 1 - c;
+                        SYMMETRY_SQUARES[symmetry][row * GomokuBoard.COLS + col] = r * GomokuBoard.COLS + c;
+                        INVERSE_SQUARES[symmetry][r * GomokuBoard.COLS + c] = row * GomokuBoard.COLS + col;
+                    }
+                }
+            }
+        }
+
         // The board
         private byte firstPlayer = PLAYER_ME;
 
         // Board represented as bitboard
         private long boardEmpty;
         private long boardMe;
-        private long boardL45Empty;
-        private long boardL45Me;
-        private long board90Empty;
-        private long board90Me;
-        private long boardR45Empty;
-        private long boardR45Me;
-
-        private State actualState; // The real state of the game
-        private State state; // The state of the game
 
         /**
          * 2 arrays of length BOARD SIZE
@@ -272,26 +871,51 @@ public class Player150278980 extends GomokuPlayer {
          */
         private int[][] scores;
 
+        // Undo stack, index is the number of moves played
+        private int ply = 0; // Moves played, including search moves
+        private int actualPly = 0; // Moves played in the real game
+        private int[] squares = new int[MAX_PLY + 1]; // The move that led to each ply
+        private byte[] players = new byte[MAX_PLY + 1]; // The player who made that move
+        private int[] totals = new int[MAX_PLY + 1]; // The score after that move
+        private int[] lineTotals = new int[MAX_PLY + 1]; // The sum of the line scores after that move
+        private boolean[] finished = new boolean[MAX_PLY + 1]; // Whether that move finished the game
+        private long[] hashes = new long[MAX_PLY + 1]; // The canonical Zobrist hash after that move
+        private long[] symmetricHashes = new long[(MAX_PLY + 1) * SYMMETRIES]; // The hash under each symmetry
+        private int[] canonicalSymmetries = new int[MAX_PLY + 1]; // The symmetry giving the canonical hash
+        private int[] prevScores = new int[(MAX_PLY + 1) * 4]; // The line scores that move replaced
+
         /**
          * Load in current game state
          */
         Game() {
             boardEmpty = 0xFFFFFFFFFFFFFFFFL;
             boardMe = 0;
-            boardL45Empty = 0xFFFFFFFFFFFFFFFFL;
-            boardL45Me = 0;
-            board90Empty = 0xFFFFFFFFFFFFFFFFL;
-            board90Me = 0;
-            boardR45Empty = 0xFFFFFFFFFFFFFFFFL;
-            boardR45Me = 0;
 
             scores = new int[4][];
             scores[0] = new int[GomokuBoard.ROWS];
             scores[1] = new int[GomokuBoard.COLS];
             scores[2] = new int[GomokuBoard.ROWS + GomokuBoard.COLS];
             scores[3] = new int[GomokuBoard.ROWS + GomokuBoard.COLS];
-            state = new State();
-            actualState = state;
+
+            players[0] = PLAYER_NONE;
+            setFirstPlayer(PLAYER_ME);
+        }
+
+        /**
+         * Sets who plays first, which is part of the hash so positions are only shared between games where we
+         * had the same colour
+         *
+         * @param player The first player relative to us
+         */
+        private void setFirstPlayer(byte player) {
+            firstPlayer = player;
+            if (ply == 0) {
+                hashes[0] = Player150278980.transpositionTable.getEmptyHash()
+                        ^ Player150278980.transpositionTable.getFirstPlayerHash(player);
+                for (int symmetry = 0; symmetry < SYMMETRIES; symmetry++) {
+                    symmetricHashes[symmetry] = hashes[0];
+                }
+            }
         }
 
         /**
@@ -302,9 +926,9 @@ public class Player150278980 extends GomokuPlayer {
          */
         void sync(Color[][] arr, Color me) {
             if (me == Color.white) {
-                firstPlayer = PLAYER_ME;
+                setFirstPlayer(PLAYER_ME);
             } else {
-                firstPlayer = PLAYER_OTHER;
+                setFirstPlayer(PLAYER_OTHER);
             }
 
             Move opponentMove = null;
@@ -335,27 +959,99 @@ public class Player150278980 extends GomokuPlayer {
          * @return
          */
         boolean isFinished() {
-            return state.finished || state.getRound() == GomokuBoard.ROWS * GomokuBoard.COLS;
+            return finished[ply] || ply == GomokuBoard.ROWS * GomokuBoard.COLS;
         }
 
         byte getWinner() {
-            if (state.getRound() == GomokuBoard.ROWS * GomokuBoard.COLS) {
+            if (ply == GomokuBoard.ROWS * GomokuBoard.COLS) {
                 return PLAYER_NONE;
             }
-            return state.getLastPlayer();
+            return players[ply];
+        }
+
+        int getScore() {
+            return totals[ply];
+        }
+
+        /**
+         * The hash of the position, the same for all 8 symmetries of it
+         *
+         * @return The smallest of the Zobrist hashes of the position under each symmetry
+         */
+        long getHash() {
+            return hashes[ply];
+        }
+
+        /**
+         * Maps a square into the frame of the canonical hash, so moves stored with it are valid for every
+         * symmetric position
+         *
+         * @param square The square, row * COLS + col
+         * @return The square under the symmetry giving the canonical hash
+         */
+        int toCanonical(int square) {
+            return SYMMETRY_SQUARES[canonicalSymmetries[ply]][square];
+        }
+
+        /**
+         * Maps a square back from the frame of the canonical hash, the inverse of toCanonical
+         *
+         * @param square The square in the canonical frame, as stored with the hash
+         * @return The square on this board
+         */
+        int fromCanonical(int square) {
+            return INVERSE_SQUARES[canonicalSymmetries[ply]][square];
         }
 
         /**
-         * Get state
+         * Finds the empty squares that are not a symmetric copy of another, higher, empty square. Moves on the
+         * other squares lead to positions symmetric to one reached from these. The highest square is kept as
+         * it is the one the move ordering tries first among equals.
+         *
+         * @return The empty squares, one per class of symmetric moves
+         */
+        long getSymmetricMoves() {
+            long moves = boardEmpty;
+            for (int symmetry = 1; symmetry < SYMMETRIES; symmetry++) {
+                if (!isSymmetric(symmetry)) continue;
+                for (int square = 0; square < GomokuBoard.ROWS * GomokuBoard.COLS; square++) {
+                    if (SYMMETRY_SQUARES[symmetry][square] > square) {
+                        moves &= ~(1L << square);
+                    }
+                }
+            }
+            return moves;
+        }
+
+        private boolean isSymmetric(int symmetry) {
+            for (int square = 0; square < GomokuBoard.ROWS * GomokuBoard.COLS; square++) {
+                int other = SYMMETRY_SQUARES[symmetry][square];
+                if (((boardEmpty >>> square) & 1L) != ((boardEmpty >>> other) & 1L)) return false;
+                if (((boardMe >>> square) & 1L) != ((boardMe >>> other) & 1L)) return false;
+            }
+            return true;
+        }
+
+        /**
+         * The number of moves played so far
          *
          * @return
          */
-        State getState() {
-            return state;
+        int getRound() {
+            return ply;
         }
 
-        int getScore() {
-            return state.getScore();
+        /**
+         * The number of search moves made on top of the real game
+         *
+         * @return The ply from the root of the search
+         */
+        int getSearchPly() {
+            return ply - actualPly;
+        }
+
+        byte getLastPlayer() {
+            return players[ply];
         }
 
         /**
@@ -364,19 +1060,44 @@ public class Player150278980 extends GomokuPlayer {
          * @return
          */
         byte getNextPlayer() {
-            if (state.getLastPlayer() == PLAYER_NONE) return firstPlayer;
-            return state.getLastPlayer() == PLAYER_ME ? PLAYER_OTHER : PLAYER_ME;
+            if (players[ply] == PLAYER_NONE) return firstPlayer;
+            return players[ply] == PLAYER_ME ? PLAYER_OTHER : PLAYER_ME;
         }
 
         long getEmptyBoard() {
             return boardEmpty;
         }
 
-        private int evaluateRow(long row, long empty) {
+        long getMeBoard() {
+            return boardMe;
+        }
+
+        /**
+         * Scores one line by table lookup, marking the game finished on a five
+         *
+         * @param row The stones of one player in the line, at most 8 bits
+         * @param empty The empty squares of the line, at most 8 bits
+         * @return Returns the score of the line for that player
+         */
+        int evaluateRow(long row, long empty) {
+            int score = ROW_SCORES[(int) ((row << 8) | empty)];
+            if (score == SCORE_GAME_WIN) {
+                finished[ply] = true;
+            }
+            return score;
+        }
+
+        /**
+         * Scores one line by pattern arithmetic, used to build ROW_SCORES
+         *
+         * @param row The stones of one player in the line, at most 8 bits
+         * @param empty The empty squares of the line, at most 8 bits
+         * @return Returns the score of the line for that player, SCORE_GAME_WIN for five in a row
+         */
+        static int evaluateRowPattern(long row, long empty) {
             int score = 0;
 
             if ((row & (row >>> 1) & (row >>> 2) & ((row >>> 3) & row >>> 4)) != 0) { // Five's or over
-                state.finished = true;
                 return SCORE_GAME_WIN;
             }
             long four = (row & (row >>> 1) & (row >>> 2) & (row >>> 3));
@@ -419,87 +1140,108 @@ public class Player150278980 extends GomokuPlayer {
             return score;
         }
 
-        private int evaluateMove(Move move) {
-            int diagonalIndex = 16 - (0b1111 ^ (7 - move.row + move.col)) & 0b1111;
-            int antiDiagonalIndex = (7 - move.row - move.col) & 0b1111;
+        /**
+         * Gathers a row of the board into 8 bits, bit c being column c
+         */
+        static long extractRow(long board, int row) {
+            return (board >>> (row * GomokuBoard.COLS)) & 0xFFL;
+        }
 
-            // Reset Scores
-            scores[0][move.row] = 0;
-            scores[1][move.col] = 0;
-            scores[2][diagonalIndex] = 0;
-            scores[3][antiDiagonalIndex] = 0;
+        /**
+         * Gathers a column of the board into 8 bits, bit r being row r
+         */
+        static long extractColumn(long board, int col) {
+            return (((board >>> col) & FILE_A) * COLUMN_MAGIC) >>> 56;
+        }
 
-            scores[0][move.row] = 0;
-            scores[1][move.col] = 0;
+        /**
+         * Gathers the squares of a diagonal or anti-diagonal mask into 8 bits, bit c being column c.
+         * A diagonal has at most one square per row and column, so the multiply never carries.
+         */
+        static long extractDiagonal(long board, long mask) {
+            return ((board & mask) * DIAGONAL_MAGIC) >>> 56;
+        }
+
+        static int diagonalIndex(int row, int col) {
+            return 16 - (0b1111 ^ (7 - row + col)) & 0b1111;
+        }
+
+        static int antiDiagonalIndex(int row, int col) {
+            return (7 - row - col) & 0b1111;
+        }
+
+        int evaluateMove(int row, int col) {
+            int diagonalIndex = diagonalIndex(row, col);
+            int antiDiagonalIndex = antiDiagonalIndex(row, col);
+
+            int previous = scores[0][row] + scores[1][col] + scores[2][diagonalIndex] + scores[3][antiDiagonalIndex];
+
+            // Reset Scores
+            scores[0][row] = 0;
+            scores[1][col] = 0;
             scores[2][diagonalIndex] = 0;
             scores[3][antiDiagonalIndex] = 0;
 
             // Compare ROW HORIZONTAL
             /////////////////////////////////////
-            long rowEmpty = (boardEmpty >>> (move.row * GomokuBoard.ROWS)) & 0xFFL;
+            long rowEmpty = extractRow(boardEmpty, row);
 
-            long rowMe = (boardMe >>> (move.row * GomokuBoard.ROWS)) & 0xFFL;
-            if (rowMe != 0) scores[0][move.row] += evaluateRow(rowMe, rowEmpty);
+            long rowMe = extractRow(boardMe, row);
+            if (rowMe != 0) scores[0][row] += evaluateRow(rowMe, rowEmpty);
             long rowOther = ((~rowEmpty) & (~rowMe)) & 0xFFL;
-            if (rowOther != 0) scores[0][move.row] -= evaluateRow(rowOther, rowEmpty);
+            if (rowOther != 0) scores[0][row] -= evaluateRow(rowOther, rowEmpty);
 
             // Compare COLUMN VERTICAL
             /////////////////////////////////////
-            long columnEmpty = (board90Empty >>> ((7 - move.col) * GomokuBoard.COLS)) & 0xFFL;
+            long columnEmpty = extractColumn(boardEmpty, col);
 
-            long columnMe = (board90Me >>> ((7 - move.col) * GomokuBoard.COLS)) & 0xFFL;
-            if (columnMe != 0) scores[1][move.col] += evaluateRow(columnMe, columnEmpty);
+            long columnMe = extractColumn(boardMe, col);
+            if (columnMe != 0) scores[1][col] += evaluateRow(columnMe, columnEmpty);
             long columnOther = ((~columnEmpty) & (~columnMe)) & 0xFFL;
-            if (columnOther != 0) scores[1][move.col] -= evaluateRow(columnOther, columnEmpty);
+            if (columnOther != 0) scores[1][col] -= evaluateRow(columnOther, columnEmpty);
 
             // Compare DIAGONAL
             ////////////////////////////////////
             // TODO: Don't check diagonals less than 5 in length
-            long diagMask = ((1L << (diagonalIndex & 0b0111)) - 1L) & 0xFFL;
-            if ((diagonalIndex & 0b1000) != 0) diagMask = (~diagMask) & 0xFFL;
-
-            long diagEmpty = ((boardL45Empty >>> ((7 - (diagonalIndex & 0b0111)) * GomokuBoard.ROWS))) & diagMask;
+            long diagMask = DIAGONAL_MASKS[diagonalIndex];
+            long diagEmpty = extractDiagonal(boardEmpty, diagMask);
 
-            long diagMe = ((boardL45Me >>> ((7 - (diagonalIndex & 0b0111)) * GomokuBoard.ROWS))) & diagMask;
+            long diagMe = extractDiagonal(boardMe, diagMask);
             if (diagMe != 0) scores[2][diagonalIndex] += evaluateRow(diagMe, diagEmpty);
-            long diagOther = ((~diagEmpty) & (~diagMe)) & diagMask;
+            long diagOther = extractDiagonal(~boardEmpty & ~boardMe, diagMask);
             if (diagOther != 0) scores[2][diagonalIndex] -= evaluateRow(diagOther, diagEmpty);
 
             // Compare ANTI-DIAGONAL
             ///////////////////////////////////
-            long antiDiagMask = ((1L << (1 + (7 - (antiDiagonalIndex & 0b0111)))) - 1L) & 0xFFL;
-            if ((antiDiagonalIndex & 0b1000) != 0) antiDiagMask = (~antiDiagMask) & 0xFFL;
-
-            long antiDiagEmpty = (boardR45Empty >>> ((7 - (antiDiagonalIndex & 0b0111)) * GomokuBoard.ROWS)) & antiDiagMask;
+            long antiDiagMask = ANTI_DIAGONAL_MASKS[antiDiagonalIndex];
+            long antiDiagEmpty = extractDiagonal(boardEmpty, antiDiagMask);
 
-            long antiDiagMe = (boardR45Me >>> ((7 - (antiDiagonalIndex & 0b0111)) * GomokuBoard.ROWS)) & antiDiagMask;
+            long antiDiagMe = extractDiagonal(boardMe, antiDiagMask);
             if (antiDiagMe != 0) scores[3][antiDiagonalIndex] += evaluateRow(antiDiagMe, antiDiagEmpty);
-            long antiDiagOther = ((~antiDiagEmpty) & (~antiDiagMe)) & antiDiagMask;
+            long antiDiagOther = extractDiagonal(~boardEmpty & ~boardMe, antiDiagMask);
             if (antiDiagOther != 0) scores[3][antiDiagonalIndex] -= evaluateRow(antiDiagOther, antiDiagEmpty);
 
 
-            // Sum of all scores
-            int score = 0;
-            for (int[] values : scores) {
-                for (int value : values) {
-                    score += value;
-                }
-            }
-            return score;
+            // Sum of all scores, only the four lines through the move changed
+            lineTotals[ply] = lineTotals[ply - 1]
+                    + scores[0][row] + scores[1][col] + scores[2][diagonalIndex] + scores[3][antiDiagonalIndex]
+                    - previous;
+            return lineTotals[ply];
         }
 
         /**
          * Update score cache for a move, recalculate score based on cache
          * The score is positive if it is good for us or negative otherwise
          *
-         * @param move
+         * @param row
+         * @param col
          * @return
          */
-        private int evaluate(Move move) {
-            int score = evaluateMove(move);
+        private int evaluate(int row, int col) {
+            int score = evaluateMove(row, col);
             if (isFinished()) {
-                if (getWinner() == PLAYER_ME) return SCORE_GAME_WIN - state.getRound();
-                else return SCORE_GAME_LOSE + state.getRound();
+                if (getWinner() == PLAYER_ME) return SCORE_GAME_WIN - ply;
+                else return SCORE_GAME_LOSE + ply;
             }
             if (getNextPlayer() == PLAYER_ME) {
                 return score + 1000; // Bonus?
@@ -509,119 +1251,118 @@ public class Player150278980 extends GomokuPlayer {
         }
 
         /**
-         * Make a move
+         * Make a move for the player whose turn it is
          *
-         * @param nextState The next state
-         * @return
+         * @param index The square, row * COLS + col
          */
-        private State move(State nextState, boolean updateActual) {
-            if (nextState.getPrevious() != state) return null;
+        void move(int index) {
+            int row = index / GomokuBoard.COLS;
+            int col = index % GomokuBoard.COLS;
+            byte player = getNextPlayer();
 
-            Move move = nextState.getLastMove();
-            int index = move.row * GomokuBoard.ROWS + move.col;
-
-            if (getNextPlayer() == PLAYER_ME) {
+            if (player == PLAYER_ME) {
                 boardMe |= (1L << index);
-                board90Me |= (1L << ((((index >> 3) | (index << 3)) & 63) ^ 56)); // sq' = (((sq >> 3) | (sq << 3)) & 63) ^ 56;
-                boardR45Me |= (1L << ((index + 8 * (index & 7)) & 63)); // sq' = (sq + 8*(sq&7)) & 63;
-                boardL45Me |= (1L << ((index + 8 * ((index & 7) ^ 7)) & 63)); // sq' = (sq + 8*((sq&7)^7)) & 63;
             }
             boardEmpty &= ~(1L << index);
-            board90Empty &= ~(1L << ((((index >> 3) | (index << 3)) & 63) ^ 56));
-            boardR45Empty &= ~(1L << ((index + 8 * (index & 7)) & 63));
-            boardL45Empty &= ~(1L << ((index + 8 * ((index & 7) ^ 7)) & 63));
-
-            state = nextState;
 
-            int diagonalIndex = 16 - (0b1111 ^ (7 - move.row + move.col)) & 0b1111;
-            int antiDiagonalIndex = (7 - move.row - move.col) & 0b1111;
-
-            state.prevScores[0] = scores[0][move.row];
-            state.prevScores[1] = scores[1][move.col];
-            state.prevScores[2] = scores[2][diagonalIndex];
-            state.prevScores[3] = scores[3][antiDiagonalIndex];
-
-            if (state.scoresCached) {
-                scores[0][move.row] = state.scores[0];
-                scores[1][move.col] = state.scores[1];
-                scores[2][diagonalIndex] = state.scores[2];
-                scores[3][antiDiagonalIndex] = state.scores[3];
-            } else {
-                state.score = evaluate(move);
-                state.scores[0] = scores[0][move.row];
-                state.scores[1] = scores[1][move.col];
-                state.scores[2] = scores[2][diagonalIndex];
-                state.scores[3] = scores[3][antiDiagonalIndex];
-                state.scoresCached = true;
-            }
-
-            if (updateActual) {
-                actualState = state;
-                //System.out.println(actualState); // Print move sequence
-                //System.out.println(this); // Print board state
+            int diagonalIndex = diagonalIndex(row, col);
+            int antiDiagonalIndex = antiDiagonalIndex(row, col);
+
+            int previous = ply * 4;
+            prevScores[previous] = scores[0][row];
+            prevScores[previous + 1] = scores[1][col];
+            prevScores[previous + 2] = scores[2][diagonalIndex];
+            prevScores[previous + 3] = scores[3][antiDiagonalIndex];
+
+            // Update the hash under every symmetry, the smallest is the canonical hash
+            int symmetric = ply * SYMMETRIES;
+            long hash = Long.MAX_VALUE;
+            int canonicalSymmetry = 0;
+            for (int symmetry = 0; symmetry < SYMMETRIES; symmetry++) {
+                long symmetricHash = symmetricHashes[symmetric + symmetry]
+                        ^ Player150278980.transpositionTable.getHash(SYMMETRY_SQUARES[symmetry][index], player);
+                symmetricHashes[symmetric + SYMMETRIES + symmetry] = symmetricHash;
+                if (symmetricHash < hash) {
+                    hash = symmetricHash;
+                    canonicalSymmetry = symmetry;
+                }
             }
 
-            return state;
-        }
-
-        public State move(State state) {
-            return move(state, false);
+            ply++;
+            squares[ply] = index;
+            players[ply] = player;
+            hashes[ply] = hash;
+            canonicalSymmetries[ply] = canonicalSymmetry;
+            finished[ply] = false;
+            totals[ply] = evaluate(row, col);
         }
 
         /**
          * Make a move
          *
          * @param move
-         * @return
+         * @param updateActual Whether the move is played in the real game rather than the search
          */
-        public State move(Move move, boolean updateActual) {
-            return move(state.move(move, getNextPlayer()), updateActual);
+        public void move(Move move, boolean updateActual) {
+            move(move.row * GomokuBoard.COLS + move.col);
+            if (updateActual) {
+                actualPly = ply;
+            }
         }
 
-        public State move(Move move) {
-            return move(move, false);
+        public void move(Move move) {
+            move(move, false);
         }
 
         /**
-         * Undo the last move in the state
-         *
-         * @return
+         * Undo the last move
          */
-        public State undo() {
-            State previous = state.getPrevious();
-            if (previous == null) return state;
+        public void undo() {
+            if (ply == 0) return;
 
-            Move moveToUndo = state.getLastMove();
-            int index = moveToUndo.row * GomokuBoard.ROWS + moveToUndo.col;
+            int index = squares[ply];
+            int row = index / GomokuBoard.COLS;
+            int col = index % GomokuBoard.COLS;
 
-            if (state.getLastPlayer() == PLAYER_ME) {
+            if (players[ply] == PLAYER_ME) {
                 boardMe &= ~(1L << index);
-                board90Me &= ~(1L << ((((index >> 3) | (index << 3)) & 63) ^ 56)); // sq' = (((sq >> 3) | (sq << 3)) & 63) ^ 56;
-                boardR45Me &= ~(1L << ((index + 8 * (index & 7)) & 63)); // sq' = (sq + 8*(sq&7)) & 63;
-                boardL45Me &= ~(1L << ((index + 8 * ((index & 7) ^ 7)) & 63)); // sq' = (sq + 8*((sq&7)^7)) & 63;
             }
             boardEmpty |= (1L << index);
-            board90Empty |= (1L << ((((index >> 3) | (index << 3)) & 63) ^ 56));
-            boardR45Empty |= (1L << ((index + 8 * (index & 7)) & 63));
-            boardL45Empty |= (1L << ((index + 8 * ((index & 7) ^ 7)) & 63));
 
-            int diagonalIndex = 16 - (0b1111 ^ (7 - moveToUndo.row + moveToUndo.col)) & 0b1111;
-            int antiDiagonalIndex = (7 - moveToUndo.row - moveToUndo.col) & 0b1111;
+            int diagonalIndex = diagonalIndex(row, col);
+            int antiDiagonalIndex = antiDiagonalIndex(row, col);
 
-            scores[0][moveToUndo.row] = state.prevScores[0];
-            scores[1][moveToUndo.col] = state.prevScores[1];
-            scores[2][diagonalIndex] = state.prevScores[2];
-            scores[3][antiDiagonalIndex] = state.prevScores[3];
+            ply--;
 
-            state = previous;
-            return state;
+            int previous = ply * 4;
+            scores[0][row] = prevScores[previous];
+            scores[1][col] = prevScores[previous + 1];
+            scores[2][diagonalIndex] = prevScores[previous + 2];
+            scores[3][antiDiagonalIndex] = prevScores[previous + 3];
         }
 
-        public State reset() {
-            while ((state != null || actualState != null) && state != actualState) {
+        /**
+         * Undo search moves back to the real game
+         */
+        public void reset() {
+            while (ply > actualPly) {
                 undo();
             }
-            return state;
+        }
+
+        /**
+         * Copy the actual game into a new game, used to give each search thread a private board
+         *
+         * @return The copy
+         */
+        Game copy() {
+            Game copy = new Game();
+            copy.setFirstPlayer(firstPlayer);
+            for (int i = 1; i <= actualPly; i++) {
+                copy.move(squares[i]);
+            }
+            copy.actualPly = copy.ply;
+            return copy;
         }
 
         private void serializeBoard(StringBuilder out, long empty, long me) {
@@ -647,12 +1388,6 @@ public class Player150278980 extends GomokuPlayer {
             StringBuilder out = new StringBuilder();
             out.append("Me:\n");
             serializeBoard(out, boardEmpty, boardMe);
-            out.append("\nMe 90:\n");
-            serializeBoard(out, board90Empty, board90Me);
-            out.append("\nMe R45 (AntiDiagonal):\n");
-            serializeBoard(out, boardR45Empty, boardR45Me);
-            out.append("\nMe L45 (Diagonal):\n");
-            serializeBoard(out, boardL45Empty, boardL45Me);
 
             return out.toString();
         }
@@ -665,106 +1400,167 @@ public class Player150278980 extends GomokuPlayer {
             out.append("\nScore: ").append(getScore());
             return out.toString();
         }
+
+        /**
+         * The move sequence of the game
+         *
+         * @return
+         */
+        public String toStringMoves() {
+            StringBuilder out = new StringBuilder();
+            for (int i = 1; i <= ply; i++) {
+                out.append(" -> (").append(squares[i] / GomokuBoard.COLS).append(',').append(squares[i] % GomokuBoard.COLS).append(')');
+                out.append(players[i] == PLAYER_ME ? " (Me)" : " (Op)");
+            }
+            return out.toString();
+        }
     }
 
 
     /**
-     * State represents a state of the board including it's parent states. It
-     * is a linked list structure that contains the moves, scores etc from states
+     * This class implements a fixed-size transposition table for board states and their scores and depth.
+     * It relies on Zobrist Hashing (https://en.wikipedia.org/wiki/Zobrist_hashing).
+     *
+     * Entries are stored as pairs of longs (verification key and packed data) so probes and stores never
+     * allocate. The table is split into buckets of two slots: the first slot is depth-preferred and
+     * the second is always-replace. Entries from older searches are aged out by a generation counter.
+     *
+     * The table is shared by the search threads without locking. The key is stored XORed with the data, so
+     * an entry torn by two threads writing at once fails verification and reads as a miss.
+     *
+     * The pairs live in a LongBuffer, on the heap by default. A table opened on a file is memory mapped
+     * instead, so it outlives the process and is shared by every engine process mapping the same file, with
+     * torn entries between processes caught the same way. The Zobrist keys are seeded so hashes agree across
+     * processes, and the file starts with a header (magic, version, entries, seed) checked on open; a file
+     * that does not match is cleared. Set the gomoku.tt system property to a path to use a file table.
      */
-    public static class State {
-        private State parent = null;
+    public static class TranspositionTable {
+        static final byte EXACT = 0;
+        static final byte LOWER = 1 << 1;
+        static final byte UPPER = 1 << 2;
 
-        private Move lastMove = null; // Move from the last state to this state
-        private byte lastPlayer = PLAYER_NONE; // The player who made the move
-        private int round = 0; // The number of rounds played so far
+        static final int NO_MOVE = -1;
 
-        int priority = 0; // Used by move ordering
+        // Returned by get when there is no entry for the hash
+        static final long MISS = 0L;
 
-        int score = 0;
-        boolean scoresCached = false;
+        // Packed entry layout
+        // 0-31 score, 32-39 depth, 40-42 flag, 43-49 move + 1, 50-57 generation, 63 valid
+        private static final int DEPTH_SHIFT = 32;
+        private static final int FLAG_SHIFT = 40;
+        private static final int MOVE_SHIFT = 43;
+        private static final int GENERATION_SHIFT = 50;
+        private static final long VALID = 1L << 63;
 
-        int[] scores;
-        int[] prevScores;
+        private static final int ENTRY_BYTES = 2 * Long.BYTES;
 
-        boolean finished = false;
-        private long hash;
+        // Zobrist keys are seeded so the same position has the same hash in every process
+        static final long ZOBRIST_SEED = 0x150278980L;
 
-        State() {
-            this.scores = new int[4];
-            this.prevScores = new int[4];
-            this.hash = Player150278980.transpositionTable.getEmptyHash();
-        }
+        // File table header: magic, version, entries, seed, padded to a cache line
+        static final long FILE_MAGIC = 0x474D4B5454424C45L; // "GMKTTBLE"
+        static final int FILE_VERSION = 1;
+        private static final int HEADER_BYTES = 64;
 
-        private State(State other, Move move, byte player) {
-            this.scores = new int[4];
-            this.prevScores = new int[4];
-            this.parent = other;
-            this.lastMove = move;
-            this.lastPlayer = player;
-            this.round = other.round + 1;
-            this.hash = other.hash ^ Player150278980.transpositionTable.getHash(move, other.lastPlayer);
-        }
+        // Entry i is the verification key at 2i followed by the packed data at 2i + 1
+        private final LongBuffer table;
+        private final MappedByteBuffer file;
+        private final int entries;
+        private final int bucketMask;
+        private int generation = 0;
 
-        State move(Move move, byte player) {
-            return new State(this, move, player);
-        }
+        private long[][] hashes;
+        private long emptyHash = 0;
+        private long secondPlayerHash;
 
-        public Move getLastMove() {
-            return lastMove;
+        TranspositionTable() {
+            this(TRANSPOSITION_TABLE_MB);
         }
 
-        public byte getLastPlayer() {
-            return lastPlayer;
+        /**
+         * @param sizeMb The size of the table in megabytes, rounded down to a power of two number of entries
+         */
+        TranspositionTable(int sizeMb) {
+            this(LongBuffer.wrap(new long[2 * entries(sizeMb)]), null);
         }
 
-        public long getHash() {
-            return hash;
-        }
+        private TranspositionTable(LongBuffer table, MappedByteBuffer file) {
+            this.table = table;
+            this.file = file;
+            entries = table.capacity() / 2;
+            bucketMask = (entries >> 1) - 1;
 
-        public State getPrevious() {
-            return parent;
+            Random random = new Random(ZOBRIST_SEED);
+            hashes = new long[GomokuBoard.ROWS * GomokuBoard.COLS][3];
+            for (int i = 0; i < hashes.length; i++) {
+                hashes[i][0] = random.nextLong(); // Game.PLAYER_NONE
+                hashes[i][1] = random.nextLong(); // Game.PLAYER_ME
+                hashes[i][2] = random.nextLong(); // Game.PLAYER_OTHER
+                emptyHash ^= hashes[i][0]; // Build empty hash
+            }
+            secondPlayerHash = random.nextLong();
         }
 
-        public int getRound() {
-            return round;
+        private static int entries(int sizeMb) {
+            long bytes = Math.max(1L, sizeMb) << 20;
+            return Integer.highestOneBit((int) Math.min(bytes / ENTRY_BYTES, 1 << 30));
         }
 
-        public int getScore() {
-            return score;
+        /**
+         * Opens a table backed by a memory mapped file, creating the file if needed. The file is cleared if its
+         * header does not match this version, size and seed.
+         *
+         * @param path The table file
+         * @param sizeMb The size of the table in megabytes, rounded down to a power of two number of entries
+         * @return The table
+         * @throws IOException If the file cannot be mapped
+         */
+        static TranspositionTable open(Path path, int sizeMb) throws IOException {
+            int entries = entries(sizeMb);
+            MappedByteBuffer file;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                file = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) entries * ENTRY_BYTES);
+            }
+            file.order(ByteOrder.LITTLE_ENDIAN);
+            LongBuffer entryBuffer = file.slice(HEADER_BYTES, entries * ENTRY_BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+            TranspositionTable table = new TranspositionTable(entryBuffer, file);
+
+            if (file.getLong(0) != FILE_MAGIC || file.getInt(8) != FILE_VERSION || file.getInt(12) != entries
+                    || file.getLong(16) != ZOBRIST_SEED) {
+                table.clear();
+                file.putLong(16, ZOBRIST_SEED);
+                file.putInt(12, entries);
+                file.putInt(8, FILE_VERSION);
+                file.putLong(0, FILE_MAGIC);
+            }
+            return table;
         }
 
-        @Override
-        public String toString() {
-            if (parent == null) return "";
-            else return parent.toString() + " -> " + lastMove.toString() + " (" + (lastPlayer == PLAYER_ME ? "Me" : "Op") + ")";
+        /**
+         * The table the players share, in the file named by the gomoku.tt system property if it is set, else on the
+         * heap. A file that cannot be mapped falls back to the heap.
+         *
+         * @return The table
+         */
+        static TranspositionTable createDefault() {
+            String path = System.getProperty("gomoku.tt");
+            if (path != null) {
+                try {
+                    return open(Paths.get(path), TRANSPOSITION_TABLE_MB);
+                } catch (IOException e) {
+                    System.err.println("Transposition table file " + path + ": " + e.getMessage());
+                }
+            }
+            return new TranspositionTable();
         }
-    }
 
-    /**
-     * This class implements a simple LRU Cache for board states and their scores and depth.
-     * It relies on Zobrist Hashing (https://en.wikipedia.org/wiki/Zobrist_hashing).
-     * The LRU Implementation is built on Java's LinkedHashMap
-     */
-    public static class TranspositionTable {
-        static final byte EXACT = 0;
-        static final byte LOWER = 1 << 1;
-        static final byte UPPER = 1 << 2;
-
-        private Map<Long, Transposition> table;
-        private long[][] hashes;
-        private long emptyHash = 0;
-
-        TranspositionTable() {
-            Random random = new Random();
-            table = new LRUCache<>(1000000);
-            hashes = new long[GomokuBoard.ROWS * GomokuBoard.COLS][3];
-            for (int i = 0; i < hashes.length; i++) {
-                hashes[i][0] = random.nextLong(); // Game.PLAYER_NONE
-                hashes[i][1] = random.nextLong(); // Game.PLAYER_ME
-                hashes[i][2] = random.nextLong(); // Game.PLAYER_OTHER
-                emptyHash ^= hashes[i][0]; // Build empty hash
-            }
+        /**
+         * Writes a file table back to its file, a no-op on the heap
+         */
+        void force() {
+            if (file != null) file.force();
         }
 
         /**
@@ -776,67 +1572,351 @@ public class Player150278980 extends GomokuPlayer {
         }
 
         /**
-         * Gets the hash for a move and player combo
-         * @param move The move
+         * Gets the hash for who played first, so the same stones are a different position when we have the
+         * other colour
+         * @param firstPlayer The first player relative to us
+         * @return The hash
+         */
+        long getFirstPlayerHash(byte firstPlayer) {
+            return firstPlayer == PLAYER_ME ? 0 : secondPlayerHash;
+        }
+
+        /**
+         * Gets the hash for a square and player combo
+         * @param square The square, row * COLS + col
          * @param player The player relative to us
          * @return The hash
          */
-        long getHash(Move move, byte player) {
+        long getHash(int square, byte player) {
             switch (player) {
                 case PLAYER_ME:
-                    return hashes[GomokuBoard.COLS * move.row + move.col][1];
+                    return hashes[square][1];
                 case PLAYER_OTHER:
-                    return hashes[GomokuBoard.COLS * move.row + move.col][2];
+                    return hashes[square][2];
                 default:
-                    return hashes[GomokuBoard.COLS * move.row + move.col][0];
+                    return hashes[square][0];
             }
         }
 
+        /**
+         * Start a new search, entries from previous searches become preferred for replacement
+         */
+        void newSearch() {
+            generation = (generation + 1) & 0xFF;
+        }
+
         /**
          * Insert a transposition into the table at the given hash
          * @param hash The hash
-         * @param transposition The transposition
+         * @param flag The bound type of the score
+         * @param score The score
+         * @param depth The depth searched
+         * @param move The best move square (row * COLS + col) or NO_MOVE
          */
-        void add(long hash, Transposition transposition) {
-            table.put(hash, transposition);
+        void add(long hash, byte flag, int score, int depth, int move) {
+            long entry = VALID
+                    | ((long) generation << GENERATION_SHIFT)
+                    | ((long) (move + 1) << MOVE_SHIFT)
+                    | ((long) flag << FLAG_SHIFT)
+                    | ((long) Math.min(depth, 0xFF) << DEPTH_SHIFT)
+                    | (score & 0xFFFFFFFFL);
+
+            int slot = ((int) hash & bucketMask) << 2;
+
+            // Depth-preferred slot, replaced by the same position, deeper searches or stale entries
+            long existing = table.get(slot + 1);
+            if ((table.get(slot) ^ existing) == hash || existing == MISS || getDepth(existing) <= depth
+                    || getGeneration(existing) != generation) {
+                table.put(slot, hash ^ entry);
+                table.put(slot + 1, entry);
+                return;
+            }
+
+            // Always-replace slot
+            table.put(slot + 2, hash ^ entry);
+            table.put(slot + 3, entry);
         }
 
         /**
-         * Retrieve a transposition from the cache
+         * Retrieve a transposition from the table
          * @param hash The hash
-         * @return
+         * @return The packed entry or MISS, read with the static getters
          */
-        Transposition get(long hash) {
-            return table.get(hash);
+        long get(long hash) {
+            int slot = ((int) hash & bucketMask) << 2;
+            long entry = table.get(slot + 1);
+            if (entry == MISS || (table.get(slot) ^ entry) != hash) {
+                entry = table.get(slot + 3);
+                if (entry == MISS || (table.get(slot + 2) ^ entry) != hash) return MISS;
+            }
+            return entry;
+        }
+
+        void clear() {
+            for (int i = 0; i < 2 * entries; i++) {
+                table.put(i, MISS);
+            }
         }
 
-        static class Transposition {
-            byte flag;
-            int score;
-            int depth;
+        static int getScore(long entry) {
+            return (int) entry;
+        }
 
-            public Transposition(byte flag, int score, int depth) {
-                this.flag = flag;
-                this.score = score;
-                this.depth = depth;
+        static int getDepth(long entry) {
+            return (int) (entry >>> DEPTH_SHIFT) & 0xFF;
+        }
+
+        static byte getFlag(long entry) {
+            return (byte) ((entry >>> FLAG_SHIFT) & 0b111);
+        }
+
+        static int getMove(long entry) {
+            return (int) ((entry >>> MOVE_SHIFT) & 0x7F) - 1;
+        }
+
+        private static int getGeneration(long entry) {
+            return (int) (entry >>> GENERATION_SHIFT) & 0xFF;
+        }
+    }
+
+
+    /**
+     * This class implements a forcing move search, used as a quiescence search at the leaves of negamax.
+     * The attacker only plays fours (and open threes if enabled) and the defender answers by taking every
+     * square that stops the threat. As in threat-space search, each threat after the first must use a
+     * square gained by an earlier one.
+     *
+     * Threats are found by scanning every 5 and 6 square window of the board, and the threats of each
+     * level are kept in preallocated arrays, so searching never allocates.
+     */
+    static class ThreatSearch {
+        static final int MAX_THREATS = 8; // Longest sequence of threats searched
+        private static final int MAX_THREAT_SQUARES = 256;
+
+        private static final long[] WINDOWS; // Every 5 square window
+        private static final long[][] SQUARE_WINDOWS; // The 5 square windows through each square
+        private static final long[] OPEN_WINDOWS; // Every 6 square window, for open threes
+        private static final long[] OPEN_ENDS; // The two end squares of each 6 square window
+
+        static {
+            int[][] directions = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+            long[] windows = new long[GomokuBoard.ROWS * GomokuBoard.COLS * directions.length];
+            long[] openWindows = new long[windows.length];
+            long[] openEnds = new long[windows.length];
+            int windowCount = 0;
+            int openCount = 0;
+
+            for (int row = 0; row < GomokuBoard.ROWS; row++) {
+                for (int col = 0; col < GomokuBoard.COLS; col++) {
+                    for (int[] direction : directions) {
+                        long window = 0;
+                        for (int i = 0; i < 6; i++) {
+                            int r = row + i * direction[0];
+                            int c = col + i * direction[1];
+                            if (r >= GomokuBoard.ROWS || c < 0 || c >= GomokuBoard.COLS) {
+                                window = -1;
+                                break;
+                            }
+                            window |= 1L << (r * GomokuBoard.COLS + c);
+                            if (i == 4) {
+                                windows[windowCount++] = window;
+                            }
+                        }
+                        if (window != -1) {
+                            openWindows[openCount] = window;
+                            openEnds[openCount++] = (1L << (row * GomokuBoard.COLS + col))
+                                    | (1L << ((row + 5 * direction[0]) * GomokuBoard.COLS + col + 5 * direction[1]));
+                        }
+                    }
+                }
             }
+
+            WINDOWS = Arrays.copyOf(windows, windowCount);
+            OPEN_WINDOWS = Arrays.copyOf(openWindows, openCount);
+            OPEN_ENDS = Arrays.copyOf(openEnds, openCount);
+
+            SQUARE_WINDOWS = new long[GomokuBoard.ROWS * GomokuBoard.COLS][];
+            for (int square = 0; square < SQUARE_WINDOWS.length; square++) {
+                int count = 0;
+                long[] through = new long[WINDOWS.length];
+                for (long window : WINDOWS) {
+                    if ((window & (1L << square)) != 0) {
+                        through[count++] = window;
+                    }
+                }
+                SQUARE_WINDOWS[square] = Arrays.copyOf(through, count);
+            }
+        }
+
+        /**
+         * Whether a move makes a four, or takes the last empty square of the other player's four
+         *
+         * @param attacker The stones of the player moving
+         * @param defender The stones of the other player
+         * @param square The move
+         * @return Returns true if the move makes or blocks a four
+         */
+        static boolean isFourMove(long attacker, long defender, int square) {
+            for (long window : SQUARE_WINDOWS[square]) {
+                if ((window & defender) == 0 && Long.bitCount(window & attacker) == 3) {
+                    return true;
+                }
+                if ((window & attacker) == 0 && Long.bitCount(window & defender) == 4) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * The only moves that can avoid losing when a threat is on the board: the squares completing a five, else the
+         * squares blocking a five of the other player, else the squares answering their open threes, which are the
+         * squares blocking them and the squares making a four, as a four must be answered first
+         *
+         * @param attacker The stones of the player to move
+         * @param defender The stones of the other player
+         * @return Returns the forced moves, or 0 if there is no threat on the board
+         */
+        static long forcedMoves(long attacker, long defender) {
+            long wins = 0;
+            long blocks = 0;
+            long fours = 0;
+            for (long window : WINDOWS) {
+                int attackerCount = Long.bitCount(window & attacker);
+                int defenderCount = Long.bitCount(window & defender);
+                if (defenderCount == 0) {
+                    if (attackerCount == 4) wins |= window & ~attacker;
+                    else if (attackerCount == 3) fours |= window & ~attacker;
+                } else if (attackerCount == 0 && defenderCount == 4) {
+                    blocks |= window & ~defender;
+                }
+            }
+            if (wins != 0) return wins;
+            if (blocks != 0) return blocks;
+
+            // Open threes: 3 stones in the middle of an empty ended 6 square window
+            long answers = 0;
+            for (int w = 0; w < OPEN_WINDOWS.length; w++) {
+                long window = OPEN_WINDOWS[w];
+                if ((window & attacker) == 0 && (OPEN_ENDS[w] & defender) == 0
+                        && Long.bitCount(window & defender) == 3) {
+                    answers |= window & ~defender;
+                }
+            }
+            return answers == 0 ? 0 : answers | fours;
+        }
+
+        private int nodeBudget;
+        private boolean threes;
+        private long[][] gains = new long[MAX_THREATS][MAX_THREAT_SQUARES];
+        private long[][] costs = new long[MAX_THREATS][MAX_THREAT_SQUARES];
+        private int nodes;
+
+        /**
+         * @param nodeBudget The number of nodes searched before giving up
+         * @param threes Whether open threes are played as well as fours
+         */
+        ThreatSearch(int nodeBudget, boolean threes) {
+            this.nodeBudget = nodeBudget;
+            this.threes = threes;
         }
 
-        static class LRUCache<K,V> extends LinkedHashMap<K,V> {
+        /**
+         * Searches for a win by a sequence of threats
+         *
+         * @param attacker The stones of the player to move
+         * @param defender The stones of the other player
+         * @return Returns true if the attacker wins by forcing moves
+         */
+        boolean wins(long attacker, long defender) {
+            nodes = 0;
+            return search(attacker, defender, -1L, 0);
+        }
 
-            private int capacity;
+        private boolean search(long attacker, long defender, long gained, int depth) {
+            if (++nodes > nodeBudget) {
+                return false;
+            }
 
-            public LRUCache(int capacity) {
-                // Capacity + 1 since add happens before remove
-                super(capacity + 1, 1.1f, true);
-                this.capacity = capacity;
+            // The attacker is to move, so a four wins, and a four of the defender must be blocked instead
+            boolean defenderFour = false;
+            for (long window : WINDOWS) {
+                int attackerCount = Long.bitCount(window & attacker);
+                int defenderCount = Long.bitCount(window & defender);
+                if (attackerCount == 4 && defenderCount == 0) {
+                    return true;
+                }
+                if (defenderCount == 4 && attackerCount == 0) {
+                    defenderFour = true;
+                }
+            }
+            if (defenderFour || depth == MAX_THREATS) {
+                return false;
             }
 
-            @Override
-            public boolean removeEldestEntry(Map.Entry<K,V> eldest) {
-                return size() > capacity;
+            int count = findThreats(attacker, defender, gained, depth);
+            for (int i = 0; i < count; i++) {
+                long gain = gains[depth][i];
+                if (search(attacker | gain, defender | costs[depth][i], depth == 0 ? gain : gained | gain, depth + 1)) {
+                    return true;
+                }
             }
+            return false;
+        }
 
+        /**
+         * Finds the threats of the attacker using a gained square, fours first
+         *
+         * @return Returns the number of threats stored for this depth
+         */
+        private int findThreats(long attacker, long defender, long gained, int depth) {
+            long[] gains = this.gains[depth];
+            long[] costs = this.costs[depth];
+            int count = 0;
+
+            // Fours: 3 stones and 2 empty squares in a 5 square window, either empty square gains
+            boolean defenderThree = false;
+            for (long window : WINDOWS) {
+                if ((window & attacker) == 0 && Long.bitCount(window & defender) == 3) {
+                    defenderThree = true;
+                }
+                if ((window & defender) != 0 || (window & gained) == 0 || Long.bitCount(window & attacker) != 3) {
+                    continue;
+                }
+                long empty = window & ~attacker;
+                long first = Long.lowestOneBit(empty);
+                if (count + 2 > MAX_THREAT_SQUARES) {
+                    return count;
+                }
+                gains[count] = first;
+                costs[count++] = empty ^ first;
+                gains[count] = empty ^ first;
+                costs[count++] = first;
+            }
+
+            // Open threes: 2 stones in the middle of an empty ended 6 square window, only safe if the defender
+            // has no four to answer with
+            if (!threes || defenderThree) {
+                return count;
+            }
+            for (int w = 0; w < OPEN_WINDOWS.length; w++) {
+                long window = OPEN_WINDOWS[w];
+                long middle = window & ~OPEN_ENDS[w];
+                if ((window & defender) != 0 || (window & gained) == 0 || (OPEN_ENDS[w] & attacker) != 0
+                        || Long.bitCount(middle & attacker) != 2) {
+                    continue;
+                }
+                long empty = middle & ~attacker;
+                long first = Long.lowestOneBit(empty);
+                if (count + 2 > MAX_THREAT_SQUARES) {
+                    return count;
+                }
+                gains[count] = first;
+                costs[count++] = (empty ^ first) | OPEN_ENDS[w];
+                gains[count] = empty ^ first;
+                costs[count++] = first | OPEN_ENDS[w];
+            }
+            return count;
         }
     }
 
@@ -1,8 +1,15 @@
 import java.awt.*;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import static java.lang.Long.*;
 import static java.lang.Math.abs;
@@ -22,12 +29,26 @@ import static java.lang.Math.abs;
  * @author Marcello De Bernardi 19/02/2018.
  */
 public class Player150382405 extends GomokuPlayer {
-    // max search depth and search time (milliseconds)
-    private static final int MAX_DEPTH = 6;
-    private static final int TIME_LIMIT = 9700;
+    // max search depth and time budget of a move (milliseconds), the time manager stops the
+    // deepening well before MAX_DEPTH in all but the simplest positions
+    private static final int MAX_DEPTH = 20;
+    static final int TIME_LIMIT = 9700;
+    // parallel search: nodes with at most SPLIT_DEPTH plies left are searched sequentially
+    private static final int SPLIT_DEPTH = 3;
+    // quiescence at the leaves: node budget, and whether threes are searched as well as fours
+    private static final int QUIESCENCE_NODES = 64;
+    private static final boolean QUIESCENCE_THREES = false;
+    // proof-number solver: empty squares at or below which it takes over from alpha-beta
+    private static final int SOLVER_EMPTY_SQUARES = 16;
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    // a single worker, which searches the split points in the same order every time
+    private static final ForkJoinPool SEQUENTIAL_POOL = new ForkJoinPool(1);
     // heuristic values of various threats
     private static final int WIN = 100;
     private static final int LOSS = -100;
+    // heuristic values stay within this bound, so they never reach the proven wins and losses
+    // of quiescence (WIN - 1 and LOSS + 1) and the two can be told apart
+    private static final int HEURISTIC_BOUND = WIN - 10;
     private static final int T_OPEN_FOUR = 4;
     private static final int T_FOUR = 1;
     private static final int T_OPEN_THREE = 2;
@@ -49,15 +70,64 @@ public class Player150382405 extends GomokuPlayer {
     private static final long RIGHT_WRAPAROUND_MASK = 0xFEFEFEFEFEFEFEFEL;
     private static final long CW_DIAGONAL_MASK = 0x80C0E0FF07030100L;
     private static final long ACW_DIAGONAL_MASK = 0x010307FFE0C08000L;
+    // manhattan distance between every pair of cells, indexed by leading zeros
+    private static final int[][] MANHATTAN = new int[64][64];
+    // distance used for a move that has not been made yet
+    private static final int NO_DISTANCE = 16;
+    // move ordering by history: a distance step is worth DISTANCE_WEIGHT, history scores are shifted
+    // down by HISTORY_SHIFT and give at most HISTORY_MAX_BONUS, and the table is halved at HISTORY_LIMIT
+    private static final int DISTANCE_WEIGHT = 64;
+    private static final int HISTORY_SHIFT = 2;
+    private static final int HISTORY_MAX_BONUS = 128;
+    private static final int HISTORY_LIMIT = 1 << 20;
     // for each cell, bit masks to filter the containing row, column, diag and anti-diag
     private long[][] masks;
     // game state
     private boolean firstMove;
     private int firstMoveX;
     private int firstMoveY;
-    private long startTime;
     private long playerMove;
     private long opponent;
+    int maxDepth = MAX_DEPTH;
+    // soft and hard time limits of each move, the hard limit stops the search at every node,
+    // UNLIMITED to search to maxDepth
+    TimeManager timeManager = new TimeManager(TIME_LIMIT);
+    // nodes searched for the last move, summed over the searches and search threads
+    final LongAdder nodes = new LongAdder();
+    // depth of the alpha-beta search that chose the last move, 0 if it was not searched
+    int depth;
+    // report of the last move's alpha-beta search, and each search thread's counters, with -Dgomoku.stats
+    final SearchStats stats = new SearchStats("Player150382405");
+    private final List<SearchStats.Counters> threadCounters = new ArrayList<>();
+    private final ThreadLocal<SearchStats.Counters> counters = ThreadLocal.withInitial(this::newCounters);
+    int solverEmptySquares = SOLVER_EMPTY_SQUARES;
+    // pool the young brothers are searched in
+    private ForkJoinPool pool = POOL;
+    // proof-number solver, made on first use
+    private ProofNumberSearch solver;
+    // move pickers for each ply, one stack per search thread
+    private final ThreadLocal<MovePicker[]> pickers = ThreadLocal.withInitial(() -> new MovePicker[0]);
+    // history of cutoffs by side (0 for the player) and square, indexed by leading zeros, shared by
+    // the search threads; racing updates may be lost, which only blurs the ordering
+    private final int[][] history = new int[2][64];
+    boolean useHistory = true;
+    // whether nodes under a threat only search the moves answering it, see forcedMoves
+    boolean useForcedMoves = true;
+    // principal variation of the last completed iteration, root move first, and the depth of the
+    // iteration in progress, which finds a node's ply in it
+    private long[] principalVariation = new long[0];
+    private int iterationDepth;
+    // lines below the sequential nodes of each depth, one table per search thread
+    private final ThreadLocal<long[][]> lines = ThreadLocal.withInitial(() -> new long[0][]);
+    // forcing move search at the leaves, one per search thread
+    private final ThreadLocal<ThreatSpaceSearch> quiescence =
+            ThreadLocal.withInitial(() -> new ThreatSpaceSearch(QUIESCENCE_NODES, QUIESCENCE_THREES));
+
+    static {
+        for (int i = 0; i < 64; i++)
+            for (int j = 0; j < 64; j++)
+                MANHATTAN[i][j] = abs(i / 8 - j / 8) + abs(i % 8 - j % 8);
+    }
 
     /**
      * Constructor for the Player class.
@@ -74,6 +144,19 @@ public class Player150382405 extends GomokuPlayer {
     }
 
 
+    /**
+     * HELPER: makes the player reproducible, for the tactical suite. The first move is drawn from
+     * the seed and the search runs on a single worker, so a position always gives the same move
+     * and node count.
+     */
+    void setDeterministic(long seed) {
+        Random random = new Random(seed);
+        firstMoveX = random.nextInt(2) + 3;
+        firstMoveY = random.nextInt(2) + 3;
+        pool = SEQUENTIAL_POOL;
+    }
+
+
     /**
      * The main entry point to the player. The game classes call this method to obtain a decision
      * from the player.
@@ -84,13 +167,27 @@ public class Player150382405 extends GomokuPlayer {
      */
     @Override
     public Move chooseMove(Color[][] colors, Color color) {
-        startTime = System.currentTimeMillis();
+        nodes.reset();
+        depth = 0;
+
+        // opening book, indexed by row * 8 + col, which is the reverse of the internal bitboards
+        long[] book = colorsToLong(colors, color);
+        timeManager.start(64 - bitCount(book[0]));
+        int bookMove = OpeningBook.getDefault().lookup(reverse(book[1]), reverse(book[0] ^ book[1]));
+        if (bookMove != OpeningBook.NO_MOVE) {
+            firstMove = false;
+            playerMove = 0x8000000000000000L >>> bookMove;
+            opponent = book[0] ^ book[1];
+            return new Move(bookMove / 8, bookMove % 8);
+        }
 
-        // rule-based first move
+        // rule-based first move, unless the player joins a game already under way
         if (firstMove) {
             firstMove = false;
-            playerMove = 0x0000000800000000L;
-            return new Move(firstMoveX, colors[firstMoveX][firstMoveY] == null ? firstMoveY : firstMoveY + 1);
+            if (bitCount(book[0]) <= 1) {
+                playerMove = 0x0000000800000000L;
+                return new Move(firstMoveX, colors[firstMoveX][firstMoveY] == null ? firstMoveY : firstMoveY + 1);
+            }
         }
 
         // alpha-beta
@@ -104,28 +201,29 @@ public class Player150382405 extends GomokuPlayer {
             long opponentPreviousMove = (spaces ^ player) ^ opponent;
             opponent = (spaces ^ player);
 
-            Move move = null;
-            int moveValue = Integer.MIN_VALUE;
-
-            // generate all adjacent moves
-            for (long[] nextBoard : expand(spaces, player, true, playerMove, opponentPreviousMove)) {
-                long nextSpaces = nextBoard[0];
-                long nextPlayer = nextBoard[1];
-                long nextMove = nextBoard[2];
-
-                // minimax on moves
-                int val = minimax(nextSpaces, nextPlayer, nextMove, opponentPreviousMove, MAX_DEPTH, Integer.MIN_VALUE, Integer.MAX_VALUE, false);
-
-                if (val > moveValue) {
-                    moveValue = val;
-                    move = new Move(numberOfLeadingZeros(nextMove) / 8, numberOfLeadingZeros(nextMove) % 8);
+            clearCounters();
+            ageHistory();
+            stats.startMove();
+
+            // threat-space search for a forced win, falling back to alpha-beta
+            ThreatSpaceSearch threatSearch = new ThreatSpaceSearch();
+            long threat = threatSearch.search(player, spaces ^ player);
+            nodes.add(threatSearch.nodes());
+            if (threat != 0) {
+                stats.endMove(sumCounters());
+                playerMove = threat;
+                return new Move(numberOfLeadingZeros(threat) / 8, numberOfLeadingZeros(threat) % 8);
+            }
 
-                    System.err.print(move + ": " + moveValue + " || ");
-                    playerMove = nextMove;
-                }
+            // proof-number solver late in the game or once a threat is on the board
+            long solved = solve(spaces, player);
+            if (solved != 0) {
+                stats.endMove(sumCounters());
+                playerMove = solved;
+                return new Move(numberOfLeadingZeros(solved) / 8, numberOfLeadingZeros(solved) % 8);
             }
-            System.out.println("Time elapsed: " + (System.currentTimeMillis() - startTime));
-            return move;
+
+            return search(spaces, player, opponentPreviousMove);
         }
         catch (Exception e) {
             e.printStackTrace();
@@ -134,31 +232,292 @@ public class Player150382405 extends GomokuPlayer {
     }
 
 
+    /**
+     * HELPER: hands the position to the proof-number solver when few empty squares are left or
+     * either player has a threat. The solver indexes squares by row * 8 + col, the reverse of
+     * the internal bitboards.
+     *
+     * @return the winning move if the solver proved a win, a drawing move if it proved a draw, else 0
+     */
+    long solve(long spaces, long player) {
+        long toMove = reverse(player);
+        long other = reverse(spaces ^ player);
+        if (!ProofNumberSearch.shouldSolve(toMove, other, solverEmptySquares)) return 0;
+
+        if (solver == null) solver = new ProofNumberSearch();
+        int result = solver.solve(toMove, other);
+        nodes.add(solver.nodes());
+        if ((result != ProofNumberSearch.WIN && result != ProofNumberSearch.DRAW)
+                || solver.getMove() == ProofNumberSearch.NO_MOVE)
+            return 0;
+        return 0x8000000000000000L >>> solver.getMove();
+    }
+
+
+    /**
+     * HELPER: iterative deepening, one root search per depth until maxDepth or the time manager
+     * stops it. Each iteration searches the root moves best first by the values of the last,
+     * and follows the last principal variation down the tree. Plays the move of the last search
+     * that completed, or if none did, the first move in the move ordering.
+     */
+    Move search(long spaces, long player, long opponentPreviousMove) {
+        // root moves in the picker's order, in a symmetric position one of each set of symmetric moves
+        long symmetricMoves = symmetricMoves(spaces, player);
+        MovePicker picker = pickers(1)[1];
+        picker.init(spaces, player, true, 0, playerMove, opponentPreviousMove, useHistory ? history : null, useForcedMoves);
+        long[] rootMoves = new long[64];
+        int rootCount = 0;
+        for (long move = picker.next(); move != 0; move = picker.next())
+            if ((move & symmetricMoves) != 0) rootMoves[rootCount++] = move;
+        if (rootCount == 0) return null;
+        rootMoves = Arrays.copyOf(rootMoves, rootCount);
+        int[] rootValues = new int[rootCount];
+
+        principalVariation = new long[0];
+
+        for (int iteration = 1; iteration <= maxDepth; iteration++) {
+            if (iteration > 1 && !timeManager.startIteration()) break;
+
+            long[] line = new long[iteration];
+            int value = pool.invoke(new RootTask(spaces, player, opponentPreviousMove, iteration, rootMoves, rootValues, line));
+            if (timeManager.stopped()) {
+                stats.endIteration(iteration, false, sumCounters());
+                break;
+            }
+            stats.endIteration(iteration, true, sumCounters(), value,
+                    SearchStats.ENABLED ? lineToString(line) : null);
+
+            principalVariation = line;
+            depth = iteration;
+            orderRootMoves(rootMoves, rootValues);
+            timeManager.completed(numberOfLeadingZeros(line[0]));
+        }
+        stats.endMove(sumCounters());
+
+        // no iteration completed, the root moves are still in the picker's order
+        long nextMove = principalVariation.length > 0 ? principalVariation[0] : rootMoves[0];
+        Move move = new Move(numberOfLeadingZeros(nextMove) / 8, numberOfLeadingZeros(nextMove) % 8);
+        playerMove = nextMove;
+        return move;
+    }
+
+
+    /**
+     * HELPER: root of the alpha-beta search. The eldest child, the best move of the previous
+     * iteration, is searched first to establish a bound, then the remaining children are
+     * searched in parallel. Runs on a worker of the pool, see RootTask, so that the split
+     * points below fork into the pool rather than the common pool.
+     *
+     * @param rootMoves the root moves, best first
+     * @param rootValues filled with the value of each root move, exact for the eldest and the
+     *                   moves that improved on it, a bound for the rest
+     * @param line       filled with the principal variation, 0 terminated if it is shorter than depth
+     * @return the value of the best move
+     */
+    private int rootSearch(long spaces, long player, long opponentPreviousMove, int depth, long[] rootMoves, int[] rootValues, long[] line) {
+        iterationDepth = depth;
+        LineCounter counter = new LineCounter(player, player ^ spaces);
+
+        long eldest = rootMoves[0];
+        long[] eldestLine = new long[depth];
+        counter.place(eldest, true);
+        int eldestValue = ybw(spaces | eldest, player | eldest, eldest, opponentPreviousMove, depth, Integer.MIN_VALUE, Integer.MAX_VALUE, false, null, counter, principalVariation.length > 0 && principalVariation[0] == eldest, eldestLine);
+        counter.remove(eldest, true);
+        rootValues[0] = eldestValue;
+
+        SplitPoint root = new SplitPoint(null, eldestValue, Integer.MAX_VALUE);
+        List<SearchTask> tasks = new ArrayList<>();
+        for (int i = 1; i < rootMoves.length; i++)
+            tasks.add(new SearchTask(root, new long[]{spaces | rootMoves[i], player | rootMoves[i], rootMoves[i]}, counter, opponentPreviousMove, depth, false));
+        ForkJoinTask.invokeAll(tasks);
+
+        // first child with the highest value, as in the sequential search
+        int bestValue = eldestValue;
+        long[] bestLine = eldestLine;
+        line[0] = eldest;
+        for (int i = 0; i < tasks.size(); i++) {
+            SearchTask task = tasks.get(i);
+            rootValues[i + 1] = task.getRawResult();
+            if (task.getRawResult() > bestValue) {
+                bestValue = task.getRawResult();
+                bestLine = task.line;
+                line[0] = task.board[2];
+            }
+        }
+        System.arraycopy(bestLine, 0, line, 1, depth - 1);
+        return bestValue;
+    }
+
+
+    /**
+     * HELPER: stable sort of the root moves by their values, best first, for the next iteration.
+     */
+    private static void orderRootMoves(long[] rootMoves, int[] rootValues) {
+        for (int i = 1; i < rootMoves.length; i++) {
+            long move = rootMoves[i];
+            int value = rootValues[i];
+            int j = i - 1;
+            for (; j >= 0 && rootValues[j] < value; j--) {
+                rootMoves[j + 1] = rootMoves[j];
+                rootValues[j + 1] = rootValues[j];
+            }
+            rootMoves[j + 1] = move;
+            rootValues[j + 1] = value;
+        }
+    }
+
+
+    /**
+     * HELPER: the move of the last principal variation at a node on it, else 0.
+     */
+    private long pvMove(boolean onPv, int depth) {
+        int ply = iterationDepth - depth + 1;
+        return onPv && ply < principalVariation.length ? principalVariation[ply] : 0;
+    }
+
+
+    /**
+     * HELPER: records a new best move of a node and the line below it, 0 terminated.
+     */
+    private static void updateLine(long[] line, long move, long[] childLine) {
+        line[0] = move;
+        System.arraycopy(childLine, 0, line, 1, line.length - 1);
+    }
+
+
+    /**
+     * HELPER: a line of moves as (row, col) pairs, up to the first 0.
+     */
+    static String lineToString(long[] line) {
+        StringBuilder builder = new StringBuilder();
+        for (long move : line) {
+            if (move == 0) break;
+            if (builder.length() > 0) builder.append(' ');
+            builder.append('(').append(numberOfLeadingZeros(move) / 8).append(',').append(numberOfLeadingZeros(move) % 8).append(')');
+        }
+        return builder.toString();
+    }
+
+
+    /**
+     * HELPER: young brothers wait parallel minimax. The eldest child is searched first, the
+     * younger siblings are then searched in parallel sharing alpha and beta through the split
+     * point. Below SPLIT_DEPTH the sequential minimax takes over.
+     *
+     * @param onPv whether the node is on the principal variation of the last iteration
+     * @param line filled with the best line from the node, 0 terminated
+     */
+    private int ybw(long spaces, long player, long lastMove, long prevMove, int depth, int alpha, int beta, boolean maximizing, SplitPoint split, LineCounter counter, boolean onPv, long[] line) {
+        if (depth <= SPLIT_DEPTH)
+            return minimax(spaces, player, lastMove, prevMove, depth, alpha, beta, maximizing, split, pickers(depth), counter, onPv, line);
+
+        nodes.increment();
+        SearchStats.Counters threadStats = SearchStats.ENABLED ? counters.get() : null;
+        if (SearchStats.ENABLED) threadStats.nodes++;
+        int terminal = counter.terminal(spaces);
+        line[0] = 0;
+
+        // if terminal node, return terminal eval
+        if (terminal != NOT_TERMINAL) {
+            return terminal;
+        }
+        // give up if out of time or an ancestor was cut off, the value is discarded
+        else if (timeManager.stopped() || (split != null && split.aborted())) {
+            return 0;
+        }
+
+        long pvMove = pvMove(onPv, depth);
+        MovePicker picker = pickers(depth)[depth];
+        picker.init(spaces, player, maximizing, pvMove, prevMove, lastMove, useHistory ? history : null, useForcedMoves);
+
+        // eldest brother, the line buffers are not shared with the thread's table as it may
+        // steal other tasks while waiting for the young brothers
+        long eldest = picker.next();
+        if (eldest == 0) return maximizing ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+
+        long[] childLine = new long[depth - 1];
+        counter.place(eldest, maximizing);
+        int value = ybw(spaces | eldest, maximizing ? player | eldest : player, eldest, lastMove, depth - 1, alpha, beta, !maximizing, split, counter, eldest == pvMove, childLine);
+        counter.remove(eldest, maximizing);
+        updateLine(line, eldest, childLine);
+        if (maximizing) alpha = Math.max(alpha, value);
+        else beta = Math.min(beta, value);
+
+        if (beta <= alpha) {
+            if (SearchStats.ENABLED) countCutoff(threadStats, true);
+            picker.cutoff(eldest, depth);
+            return value;
+        }
+
+        // young brothers, taken out of the picker before forking since a stolen task may reuse it
+        SplitPoint node = new SplitPoint(split, alpha, beta);
+        List<SearchTask> tasks = new ArrayList<>();
+        for (long move = picker.next(); move != 0; move = picker.next())
+            tasks.add(new SearchTask(node, new long[]{spaces | move, maximizing ? player | move : player, move}, counter, lastMove, depth - 1, !maximizing));
+        ForkJoinTask.invokeAll(tasks);
+
+        for (SearchTask task : tasks) {
+            if (!task.completed) continue;
+            int childVal = task.getRawResult();
+            if (maximizing ? childVal > value : childVal < value) {
+                value = childVal;
+                updateLine(line, task.board[2], task.line);
+            }
+        }
+        return value;
+    }
+
+
     /**
      * HELPER: main minimax procedure
      */
-    private int minimax(long spaces, long player, long lastMove, long prevMove, int depth, int alpha, int beta, boolean maximizing) {
-        int terminal = terminal(spaces, player, lastMove, !maximizing);
+    private int minimax(long spaces, long player, long lastMove, long prevMove, int depth, int alpha, int beta, boolean maximizing, SplitPoint split, MovePicker[] pickers, LineCounter counter, boolean onPv, long[] line) {
+        nodes.increment();
+        SearchStats.Counters threadStats = SearchStats.ENABLED ? counters.get() : null;
+        if (SearchStats.ENABLED) threadStats.nodes++;
+        int terminal = counter.terminal(spaces);
+        line[0] = 0;
 
         // if terminal node, return terminal eval
         if (terminal != NOT_TERMINAL) {
             return terminal;
         }
-        // evaluate if leaf node or reached time cutoff
-        else if (depth == 1 || (System.currentTimeMillis() - startTime) > TIME_LIMIT) {
-            return evaluate(player, (~player & spaces));
+        // at leaf nodes, extend forcing moves before evaluating
+        else if (depth == 1) {
+            if (SearchStats.ENABLED) threadStats.evaluations++;
+            return quiesce(spaces, player, maximizing, counter);
+        }
+        // give up if out of time or a parallel sibling of an ancestor caused a cutoff, the value
+        // is discarded
+        else if (timeManager.stopped() || (split != null && split.aborted())) {
+            return 0;
         }
         // else recurse minimax for maximizing player
         else if (maximizing) {
             int value = Integer.MIN_VALUE;
-
-            for (long[] board : expand(spaces, player, true, prevMove, lastMove)) {
-                int childVal = minimax(board[0], board[1], board[2], lastMove, depth - 1, alpha, beta, false);
-
-                if (childVal > value) value = childVal;
+            MovePicker picker = pickers[depth];
+            long pvMove = pvMove(onPv, depth);
+            picker.init(spaces, player, true, pvMove, prevMove, lastMove, useHistory ? history : null, useForcedMoves);
+            long[] childLine = lines(depth - 1)[depth - 1];
+
+            boolean first = true;
+            for (long move = picker.next(); move != 0; move = picker.next()) {
+                counter.place(move, true);
+                int childVal = minimax(spaces | move, player | move, move, lastMove, depth - 1, alpha, beta, false, split, pickers, counter, move == pvMove, childLine);
+                counter.remove(move, true);
+
+                if (childVal > value) {
+                    value = childVal;
+                    updateLine(line, move, childLine);
+                }
                 if (value > alpha) alpha = value;
 
-                if (beta <= alpha) break;
+                if (beta <= alpha) {
+                    if (SearchStats.ENABLED) countCutoff(threadStats, first);
+                    picker.cutoff(move, depth);
+                    break;
+                }
+                first = false;
             }
 
             return value;
@@ -166,14 +525,29 @@ public class Player150382405 extends GomokuPlayer {
         // else recurse minimax for minimizing player
         else {
             int value = Integer.MAX_VALUE;
-
-            for (long[] board : expand(spaces, player, false, prevMove, lastMove)) {
-                int childVal = minimax(board[0], board[1], board[2], lastMove, depth - 1, alpha, beta, true);
-
-                if (childVal < value) value = childVal;
+            MovePicker picker = pickers[depth];
+            long pvMove = pvMove(onPv, depth);
+            picker.init(spaces, player, false, pvMove, prevMove, lastMove, useHistory ? history : null, useForcedMoves);
+            long[] childLine = lines(depth - 1)[depth - 1];
+
+            boolean first = true;
+            for (long move = picker.next(); move != 0; move = picker.next()) {
+                counter.place(move, false);
+                int childVal = minimax(spaces | move, player, move, lastMove, depth - 1, alpha, beta, true, split, pickers, counter, move == pvMove, childLine);
+                counter.remove(move, false);
+
+                if (childVal < value) {
+                    value = childVal;
+                    updateLine(line, move, childLine);
+                }
                 if (value < beta) beta = value;
 
-                if (beta <= alpha) break;
+                if (beta <= alpha) {
+                    if (SearchStats.ENABLED) countCutoff(threadStats, first);
+                    picker.cutoff(move, depth);
+                    break;
+                }
+                first = false;
             }
 
             return value;
@@ -181,32 +555,66 @@ public class Player150382405 extends GomokuPlayer {
     }
 
     /**
-     * HELPER: heuristic evaluation function for nodes
+     * HELPER: counts a beta cutoff, and whether the first move made it.
      */
-    @SuppressWarnings("Duplicates")
-    private int evaluate(long player, long opponent) {
-        long[] pTransforms = new long[]{
-                player,
-                antidiagonal(player),
-                anticlockwise(player) ^ ACW_DIAGONAL_MASK,
-                clockwise(player) ^ CW_DIAGONAL_MASK};
-        long[] oTransforms = new long[]{
-                opponent,
-                antidiagonal(opponent),
-                anticlockwise(opponent) ^ ACW_DIAGONAL_MASK,
-                clockwise(opponent) ^ CW_DIAGONAL_MASK} ;
+    private static void countCutoff(SearchStats.Counters threadStats, boolean first) {
+        threadStats.cutoffs++;
+        if (first) threadStats.firstMoveCutoffs++;
+    }
 
-        int value = 0;
 
-        // fours
-        value += findFours(pTransforms, oTransforms);
-        value -= findFours(oTransforms, pTransforms);
+    /**
+     * HELPER: the counters of a search thread, made on its first node.
+     */
+    private SearchStats.Counters newCounters() {
+        SearchStats.Counters threadStats = new SearchStats.Counters();
+        synchronized (threadCounters) {
+            threadCounters.add(threadStats);
+        }
+        return threadStats;
+    }
 
-        // threes
-        value += findThrees(pTransforms, oTransforms);
-        value -= findThrees(oTransforms, pTransforms);
 
-        return value;
+    /**
+     * HELPER: totals of the search threads' counters, summed while no search is running.
+     */
+    private SearchStats.Counters sumCounters() {
+        SearchStats.Counters total = new SearchStats.Counters();
+        synchronized (threadCounters) {
+            for (SearchStats.Counters threadStats : threadCounters) total.add(threadStats);
+        }
+        return total;
+    }
+
+
+    /**
+     * HELPER: halves the history before a new move, so recent cutoffs count for more.
+     */
+    private void ageHistory() {
+        for (int[] scores : history)
+            for (int square = 0; square < scores.length; square++)
+                scores[square] >>= 1;
+    }
+
+
+    private void clearCounters() {
+        synchronized (threadCounters) {
+            for (SearchStats.Counters threadStats : threadCounters) threadStats.clear();
+        }
+    }
+
+
+    /**
+     * HELPER: quiescence at the leaves. If the side to move wins by continuous fours (and open
+     * threes, if enabled) the leaf is scored as a win for them, else it is evaluated statically.
+     */
+    private int quiesce(long spaces, long player, boolean maximizing, LineCounter counter) {
+        long opponent = spaces ^ player;
+        ThreatSpaceSearch search = quiescence.get();
+
+        if (maximizing && search.wins(player, opponent)) return WIN - 1;
+        if (!maximizing && search.wins(opponent, player)) return LOSS + 1;
+        return counter.evaluate();
     }
 
     @SuppressWarnings("Duplicates")
@@ -280,7 +688,7 @@ public class Player150382405 extends GomokuPlayer {
     }
 
     /**
-     * HELPER: returns -100 is loss, 0 if tie, 100 if win, 1 if non-terminal
+     * HELPER: returns -100 is loss, 0 if tie, 100 if win, NOT_TERMINAL if non-terminal
      */
     int terminal(long spaces, long player, long move, boolean playerMoved) {
         int maskIndex = Long.numberOfLeadingZeros(move);
@@ -323,13 +731,43 @@ public class Player150382405 extends GomokuPlayer {
     }
 
     /**
-     * HELPER: expands the given node, saving the new nodes and returning the list of children
+     * HELPER: returns the move picker stack of the current thread, with a picker for every ply up to depth
      */
-    private long[][] expand(long spaces, long player, boolean playerTurn, long playerMove, long opponentMove) {
+    private MovePicker[] pickers(int depth) {
+        MovePicker[] stack = pickers.get();
+        if (stack.length <= depth) {
+            int previous = stack.length;
+            stack = Arrays.copyOf(stack, depth + 1);
+            for (int i = previous; i < stack.length; i++)
+                stack[i] = new MovePicker();
+            pickers.set(stack);
+        }
+        return stack;
+    }
+
+    /**
+     * HELPER: returns the line table of the current thread, with a line of length i for every
+     * depth i up to depth
+     */
+    private long[][] lines(int depth) {
+        long[][] table = lines.get();
+        if (table.length <= depth) {
+            int previous = table.length;
+            table = Arrays.copyOf(table, depth + 1);
+            for (int i = previous; i < table.length; i++)
+                table[i] = new long[i];
+            lines.set(table);
+        }
+        return table;
+    }
+
+    /**
+     * HELPER: empty cells adjacent to at least one stone
+     */
+    static long candidates(long spaces) {
         long moves;
 
         // generate adjacent moves by ORing shifted bits
-        // then XOR to remove overlaps with occupied squares
         moves = ((spaces >>> 1) & LEFT_WRAPAROUND_MASK);
         moves |= ((spaces << 1) & RIGHT_WRAPAROUND_MASK);
         moves |= (spaces >>> 8);
@@ -338,34 +776,143 @@ public class Player150382405 extends GomokuPlayer {
         moves |= ((spaces << 9) & RIGHT_WRAPAROUND_MASK);
         moves |= ((spaces >>> 7) & RIGHT_WRAPAROUND_MASK);
         moves |= ((spaces << 7) & LEFT_WRAPAROUND_MASK);
-        moves ^= spaces;
 
-        // spaces, whites, move, manhattan distance
-        long[][] children = new long[bitCount(moves)][4];
+        // remove occupied squares
+        return moves & ~spaces;
+    }
+
+    /**
+     * HELPER: empty cells where the given stones would complete five in a row
+     */
+    static long fives(long stones, long empty) {
+        long result = 0;
+
+        // for each direction, cells with k stones running one way and 4 - k the other
+        for (int direction = 0; direction < 4; direction++) {
+            long f1 = shift(stones, direction, false);
+            long f2 = shift(stones & f1, direction, false);
+            long f3 = shift(stones & f2, direction, false);
+            long f4 = shift(stones & f3, direction, false);
+            long b1 = shift(stones, direction, true);
+            long b2 = shift(stones & b1, direction, true);
+            long b3 = shift(stones & b2, direction, true);
+            long b4 = shift(stones & b3, direction, true);
+
+            result |= f4 | (f3 & b1) | (f2 & b2) | (f1 & b3) | b4;
+        }
+
+        return result & empty;
+    }
+
+    /**
+     * HELPER: empty cells that answer an open three of the given stones: the two ends and the
+     * empty middle cell of every 6-cell window holding three stones in its middle four cells and
+     * nothing else
+     */
+    static long threeAnswers(long stones, long empty) {
+        long result = 0;
+
+        // for each direction, the window's first cell when the cell k steps along has a stone (s)
+        // or is empty (e)
+        for (int direction = 0; direction < 4; direction++) {
+            long s1 = shift(stones, direction, true);
+            long s2 = shift(s1, direction, true);
+            long s3 = shift(s2, direction, true);
+            long s4 = shift(s3, direction, true);
+            long e1 = shift(empty, direction, true);
+            long e2 = shift(e1, direction, true);
+            long e3 = shift(e2, direction, true);
+            long e4 = shift(e3, direction, true);
+            long ends = empty & shift(e4, direction, true);
+
+            // for each gap among the middle cells, walk from the first cell to the gap and the far end
+            for (int gap = 1; gap <= 4; gap++) {
+                long cell = ends & (gap == 1 ? e1 : s1) & (gap == 2 ? e2 : s2) & (gap == 3 ? e3 : s3)
+                        & (gap == 4 ? e4 : s4);
+                result |= cell;
+                for (int i = 1; i <= 5; i++) {
+                    cell = shift(cell, direction, false);
+                    if (i == gap || i == 5) result |= cell;
+                }
+            }
+        }
 
-        for (int i = 0; i < children.length; i++) {
-            long move = highestOneBit(moves);
+        return result;
+    }
 
-            children[i][0] = spaces | move;
-            children[i][1] = playerTurn ? player | move : player;
-            children[i][2] = move;
+    /**
+     * HELPER: empty cells where the given stones would make a four, open or not
+     */
+    static long fours(long stones, long opposing) {
+        long result = 0;
+        for (long window : LineCounter.WINDOWS)
+            if ((window & opposing) == 0 && bitCount(window & stones) == 3) result |= window & ~stones;
+        return result;
+    }
 
-            long dist1 = abs(numberOfLeadingZeros(playerMove) - numberOfLeadingZeros(move));
-            dist1 = dist1 / 8 + dist1 % 8;
-            long dist2 = abs(numberOfLeadingZeros(opponentMove) - numberOfLeadingZeros(move));
-            dist2 = dist2 / 8 + dist2 % 8;
+    /**
+     * HELPER: the only moves worth searching for the side to move when a threat is on the board,
+     * 0 if there is none: the cells completing five, else the cells blocking the opponent's five,
+     * else the cells answering the opponent's open threes, which are the cells blocking them and
+     * the cells making a four, as a four has to be answered first. Any other move loses.
+     */
+    static long forcedMoves(long stones, long opposing) {
+        long empty = ~(stones | opposing);
+
+        long wins = fives(stones, empty);
+        if (wins != 0) return wins;
+        long blocks = fives(opposing, empty);
+        if (blocks != 0) return blocks;
+        long answers = threeAnswers(opposing, empty);
+        if (answers != 0) answers |= fours(stones, opposing);
+        return answers;
+    }
 
-            children[i][3] = Long.min(dist1, dist2);
-            moves ^= move;
+    /**
+     * HELPER: moves every bit one cell along a direction (0 row, 1 column, 2 lr diagonal,
+     * 3 rl diagonal), dropping the bits that would wrap around the board
+     */
+    static long shift(long x, int direction, boolean reverse) {
+        switch (direction) {
+            case 0:
+                return reverse ? (x >>> 1) & LEFT_WRAPAROUND_MASK : (x << 1) & RIGHT_WRAPAROUND_MASK;
+            case 1:
+                return reverse ? x >>> 8 : x << 8;
+            case 2:
+                return reverse ? (x >>> 9) & LEFT_WRAPAROUND_MASK : (x << 9) & RIGHT_WRAPAROUND_MASK;
+            default:
+                return reverse ? (x >>> 7) & RIGHT_WRAPAROUND_MASK : (x << 7) & LEFT_WRAPAROUND_MASK;
         }
+    }
 
-        // order moves by manhattan distance to last player move or opp move
-        Arrays.sort(children, (move1, move2) -> {
-            if (move1[3] == move2[3]) return 0;
-            else return move1[3] < move2[3] ? -1 : 1;
-        });
+    /**
+     * HELPER: empty cells that are not a symmetric copy of another, earlier, empty cell under a
+     * symmetry of the position. Moves on the other cells lead to positions symmetric to one
+     * reached from these, so the root only needs to search these.
+     */
+    long symmetricMoves(long spaces, long player) {
+        long moves = ~spaces;
+        for (int symmetry = 1; symmetry < 8; symmetry++) {
+            if (symmetry(spaces, symmetry) != spaces || symmetry(player, symmetry) != player) continue;
+
+            for (long cells = ~spaces; cells != 0; cells ^= highestOneBit(cells)) {
+                long cell = highestOneBit(cells);
+                if (numberOfLeadingZeros(symmetry(cell, symmetry)) < numberOfLeadingZeros(cell))
+                    moves &= ~cell;
+            }
+        }
+        return moves;
+    }
 
-        return children;
+    /**
+     * HELPER: applies one of the 8 symmetries of the board, bit 2 flipping by the antidiagonal,
+     * bit 1 mirroring the columns and bit 0 flipping the rows. Symmetry 0 is the identity.
+     */
+    long symmetry(long x, int symmetry) {
+        if ((symmetry & 4) != 0) x = antidiagonal(x);
+        if ((symmetry & 2) != 0) x = reverse(reverseBytes(x));
+        if ((symmetry & 1) != 0) x = reverseBytes(x);
+        return x;
     }
 
     /////////////////////// UTILITIES ////////////////////////////
@@ -478,4 +1025,661 @@ public class Player150382405 extends GomokuPlayer {
 
         return masks;
     }
-}
\ No newline at end of file
+
+
+    /////////////////////// EVALUATION ////////////////////////////
+
+    /**
+     * HELPER: incremental evaluation over every 5-cell winning window of the board. The number
+     * of stones each side has in each window is updated as moves are placed and removed, along
+     * with a running score, so evaluating a leaf or checking for a win is a read.
+     */
+    static class LineCounter {
+        // every 5-cell window: rows, columns, lr diagonals, rl diagonals
+        static final long[] WINDOWS;
+        // for each cell, the windows it belongs to
+        static final int[][] CELL_WINDOWS;
+        // value of a window holding this many stones of one side and none of the other
+        private static final int[] WEIGHTS = {0, 0, 0, 1, 4, 0};
+
+        static {
+            List<Long> windows = new ArrayList<>();
+            for (int row = 0; row < 8; row++) {
+                for (int col = 0; col < 8; col++) {
+                    long rowWindow = 0, colWindow = 0, lrWindow = 0, rlWindow = 0;
+                    for (int i = 0; i < 5; i++) {
+                        if (col + i < 8) rowWindow |= 0x8000000000000000L >>> (row * 8 + col + i);
+                        if (row + i < 8) colWindow |= 0x8000000000000000L >>> ((row + i) * 8 + col);
+                        if (row + i < 8 && col + i < 8) lrWindow |= 0x8000000000000000L >>> ((row + i) * 8 + col + i);
+                        if (row + i < 8 && col - i >= 0) rlWindow |= 0x8000000000000000L >>> ((row + i) * 8 + col - i);
+                    }
+                    for (long window : new long[]{rowWindow, colWindow, lrWindow, rlWindow})
+                        if (bitCount(window) == 5) windows.add(window);
+                }
+            }
+
+            WINDOWS = new long[windows.size()];
+            for (int i = 0; i < WINDOWS.length; i++)
+                WINDOWS[i] = windows.get(i);
+
+            CELL_WINDOWS = new int[64][];
+            for (int cell = 0; cell < 64; cell++) {
+                int count = 0;
+                int[] cellWindows = new int[WINDOWS.length];
+                for (int i = 0; i < WINDOWS.length; i++)
+                    if ((WINDOWS[i] & (0x8000000000000000L >>> cell)) != 0) cellWindows[count++] = i;
+                CELL_WINDOWS[cell] = Arrays.copyOf(cellWindows, count);
+            }
+        }
+
+        private final int[] playerCounts;
+        private final int[] opponentCounts;
+        private int playerFives;
+        private int opponentFives;
+        private int score;
+
+        /**
+         * Builds the counts for a position.
+         */
+        LineCounter(long player, long opponent) {
+            playerCounts = new int[WINDOWS.length];
+            opponentCounts = new int[WINDOWS.length];
+            for (long cells = player; cells != 0; cells ^= highestOneBit(cells))
+                place(highestOneBit(cells), true);
+            for (long cells = opponent; cells != 0; cells ^= highestOneBit(cells))
+                place(highestOneBit(cells), false);
+        }
+
+        LineCounter(LineCounter other) {
+            playerCounts = other.playerCounts.clone();
+            opponentCounts = other.opponentCounts.clone();
+            playerFives = other.playerFives;
+            opponentFives = other.opponentFives;
+            score = other.score;
+        }
+
+        /**
+         * Places a stone, given as a bit, for the player or the opponent.
+         */
+        void place(long move, boolean isPlayer) {
+            for (int window : CELL_WINDOWS[numberOfLeadingZeros(move)]) {
+                score -= value(window);
+                if (isPlayer && ++playerCounts[window] == 5) playerFives++;
+                else if (!isPlayer && ++opponentCounts[window] == 5) opponentFives++;
+                score += value(window);
+            }
+        }
+
+        /**
+         * Removes a stone placed by place.
+         */
+        void remove(long move, boolean isPlayer) {
+            for (int window : CELL_WINDOWS[numberOfLeadingZeros(move)]) {
+                score -= value(window);
+                if (isPlayer && playerCounts[window]-- == 5) playerFives--;
+                else if (!isPlayer && opponentCounts[window]-- == 5) opponentFives--;
+                score += value(window);
+            }
+        }
+
+        /**
+         * Returns WIN or LOSS if either side has five in a row, TIE if the board is full, else NOT_TERMINAL.
+         */
+        int terminal(long spaces) {
+            if (playerFives > 0) return WIN;
+            if (opponentFives > 0) return LOSS;
+            // -1 is 111...111, i.e. full board
+            return spaces == -1 ? TIE : NOT_TERMINAL;
+        }
+
+        /**
+         * Returns the heuristic value of the position, at most HEURISTIC_BOUND either side of zero.
+         */
+        int evaluate() {
+            return Math.max(-HEURISTIC_BOUND, Math.min(HEURISTIC_BOUND, score));
+        }
+
+        private int value(int window) {
+            if (opponentCounts[window] == 0) return WEIGHTS[playerCounts[window]];
+            if (playerCounts[window] == 0) return -WEIGHTS[opponentCounts[window]];
+            return 0;
+        }
+    }
+
+    /////////////////////// THREAT-SPACE SEARCH ////////////////////////////
+
+    /**
+     * HELPER: threat-space search as described in the readme. The attacker only plays the gain
+     * squares of threats (fours and threes), and the defender answers by occupying all the cost
+     * squares of each threat at once. The dependency stage only extends a sequence with threats
+     * whose window contains an earlier gain square; the combination stage then pairs up
+     * non-conflicting threats at the root and searches for threats that depend on both.
+     *
+     * To keep found sequences sound against counter-play, threes are only considered while the
+     * defender cannot make a four, and a sequence fails as soon as the defender can make five.
+     * Both are checked again after each threat is answered, including the first threat of a
+     * combined pair.
+     * With threes turned off this is a victory by continuous fours search, as used at the leaves.
+     */
+    static class ThreatSpaceSearch {
+        // longest threat sequence and most nodes searched before giving up
+        static final int MAX_THREATS = 10;
+        static final int NODE_BUDGET = 200000;
+        // gain and cost squares of threats, one buffer per sequence depth
+        private static final int MAX_THREAT_SQUARES = 256;
+        // every 6-cell window, with its two end cells and four centre cells, for threes
+        static final long[] SIX_WINDOWS;
+        static final long[] SIX_ENDS;
+
+        static {
+            List<long[]> windows = new ArrayList<>();
+            int[][] directions = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+            for (int row = 0; row < 8; row++) {
+                for (int col = 0; col < 8; col++) {
+                    for (int[] direction : directions) {
+                        int endRow = row + 5 * direction[0];
+                        int endCol = col + 5 * direction[1];
+                        if (endRow >= 8 || endCol < 0 || endCol >= 8) continue;
+
+                        long window = 0;
+                        for (int i = 0; i < 6; i++)
+                            window |= 0x8000000000000000L >>> ((row + i * direction[0]) * 8 + col + i * direction[1]);
+                        long ends = (0x8000000000000000L >>> (row * 8 + col)) | (0x8000000000000000L >>> (endRow * 8 + endCol));
+                        windows.add(new long[]{window, ends});
+                    }
+                }
+            }
+
+            SIX_WINDOWS = new long[windows.size()];
+            SIX_ENDS = new long[windows.size()];
+            for (int i = 0; i < windows.size(); i++) {
+                SIX_WINDOWS[i] = windows.get(i)[0];
+                SIX_ENDS[i] = windows.get(i)[1];
+            }
+        }
+
+        private final int nodeBudget;
+        private final boolean threes;
+        private final long[][] threats = new long[MAX_THREATS + 1][MAX_THREAT_SQUARES];
+        private int nodes;
+
+        ThreatSpaceSearch() {
+            this(NODE_BUDGET, true);
+        }
+
+        /**
+         * Builds a search giving up after nodeBudget nodes, using threes as threats or only fours.
+         */
+        ThreatSpaceSearch(int nodeBudget, boolean threes) {
+            this.nodeBudget = nodeBudget;
+            this.threes = threes;
+        }
+
+        /**
+         * Searches for a winning threat sequence for the attacker, who is to move.
+         *
+         * @return the gain square of the first threat as a bit, or 0 if no sequence was found
+         */
+        long search(long attacker, long defender) {
+            nodes = 0;
+            long empty = ~(attacker | defender);
+
+            // immediate five, or the defender threatens one and there is no time for threats
+            long five = fives(attacker, empty);
+            if (five != 0) return highestOneBit(five);
+            if (fives(defender, empty) != 0) return 0;
+
+            // dependency stage from the root, any threat may start a sequence
+            long[] threats = this.threats[0];
+            int count = threats(attacker, defender, -1L, -1L, threats);
+            for (int i = 0; i < count; i += 2)
+                if (dependencyStage(attacker | threats[i], defender | threats[i + 1], threats[i], 1))
+                    return threats[i];
+
+            // combination stage, pairs of non-conflicting root threats
+            for (int i = 0; i < count; i += 2) {
+                for (int j = i + 2; j < count; j += 2) {
+                    if (((threats[i] | threats[i + 1]) & (threats[j] | threats[j + 1])) != 0) continue;
+                    if (nodes > nodeBudget) return 0;
+
+                    // play a four first, it forces the reply
+                    int first = isFour(attacker, defender, threats[j]) ? j : i;
+                    int second = first == i ? j : i;
+                    if (!forcesAfter(attacker, defender, threats[first], threats[first + 1], threats[second])) continue;
+
+                    long a = attacker | threats[i] | threats[j];
+                    long d = defender | threats[i + 1] | threats[j + 1];
+                    if (combinationStage(a, d, threats[i], threats[j]))
+                        return threats[first];
+                }
+            }
+
+            return 0;
+        }
+
+        /**
+         * Whether the attacker, who is to move, wins by a sequence of threats found by the
+         * dependency stage alone. Cheaper than search, meant for the leaves of the main search.
+         */
+        boolean wins(long attacker, long defender) {
+            nodes = 0;
+            long empty = ~(attacker | defender);
+            if (fives(attacker, empty) != 0) return true;
+            if (fives(defender, empty) != 0) return false;
+
+            long[] threats = this.threats[0];
+            int count = threats(attacker, defender, -1L, -1L, threats);
+            for (int i = 0; i < count; i += 2)
+                if (dependencyStage(attacker | threats[i], defender | threats[i + 1], threats[i], 1))
+                    return true;
+
+            return false;
+        }
+
+        /**
+         * HELPER: number of nodes searched by the last search.
+         */
+        int nodes() {
+            return nodes;
+        }
+
+        /**
+         * HELPER: depth-first search over threats depending on earlier gain squares, true if the
+         * attacker (to move) wins.
+         */
+        private boolean dependencyStage(long attacker, long defender, long gains, int depth) {
+            if (++nodes > nodeBudget) return false;
+
+            long empty = ~(attacker | defender);
+            if (fives(attacker, empty) != 0) return true;
+            if (fives(defender, empty) != 0 || depth == MAX_THREATS) return false;
+
+            long[] threats = this.threats[depth];
+            int count = threats(attacker, defender, gains, -1L, threats);
+            for (int i = 0; i < count; i += 2)
+                if (dependencyStage(attacker | threats[i], defender | threats[i + 1], gains | threats[i], depth + 1))
+                    return true;
+
+            return false;
+        }
+
+        /**
+         * HELPER: whether a second threat still forces a reply once the first has been played and
+         * answered. The answer may give the defender a four to make, which refutes a three, or a
+         * five to make, which refutes any threat.
+         */
+        private static boolean forcesAfter(long attacker, long defender, long gain, long cost, long next) {
+            long a = attacker | gain;
+            long d = defender | cost;
+            if (fives(d, ~(a | d)) != 0) return false;
+            return isFour(a, d, next) || !canMakeFour(d, a);
+        }
+
+        /**
+         * HELPER: continues the search from two combined threats, only with threats depending on both.
+         */
+        private boolean combinationStage(long attacker, long defender, long first, long second) {
+            long empty = ~(attacker | defender);
+            if (fives(attacker, empty) != 0) return true;
+            if (fives(defender, empty) != 0) return false;
+
+            long[] threats = this.threats[1];
+            int count = threats(attacker, defender, first, second, threats);
+            for (int i = 0; i < count; i += 2)
+                if (dependencyStage(attacker | threats[i], defender | threats[i + 1], first | second | threats[i], 2))
+                    return true;
+
+            return false;
+        }
+
+        /**
+         * HELPER: fills out with pairs of (gain square, cost squares) for every four, and every three
+         * if threes are searched and the defender cannot make a four, whose window contains a cell of both dependency masks.
+         * Fours come first. Returns the number of longs written.
+         */
+        private int threats(long attacker, long defender, long dependsOn, long alsoDependsOn, long[] out) {
+            int count = 0;
+
+            // fours: 3 attacker stones and 2 empty cells in a 5-cell window
+            for (long window : LineCounter.WINDOWS) {
+                if ((window & defender) != 0 || bitCount(window & attacker) != 3) continue;
+                if ((window & dependsOn) == 0 || (window & alsoDependsOn) == 0) continue;
+
+                long empty = window & ~attacker;
+                long first = highestOneBit(empty);
+                long second = empty ^ first;
+                count = add(out, count, first, second);
+                count = add(out, count, second, first);
+            }
+
+            if (!threes || canMakeFour(defender, attacker)) return count;
+
+            // threes: 2 attacker stones in the centre of an empty-ended 6-cell window
+            for (int w = 0; w < SIX_WINDOWS.length; w++) {
+                long window = SIX_WINDOWS[w];
+                long centre = window & ~SIX_ENDS[w];
+                if ((window & defender) != 0 || bitCount(centre & attacker) != 2 || (SIX_ENDS[w] & attacker) != 0) continue;
+                if ((window & dependsOn) == 0 || (window & alsoDependsOn) == 0) continue;
+
+                long empty = centre & ~attacker;
+                long first = highestOneBit(empty);
+                long second = empty ^ first;
+                count = add(out, count, first, second | SIX_ENDS[w]);
+                count = add(out, count, second, first | SIX_ENDS[w]);
+            }
+
+            return count;
+        }
+
+        private static int add(long[] out, int count, long gain, long cost) {
+            if (count + 2 > out.length) return count;
+            out[count] = gain;
+            out[count + 1] = cost;
+            return count + 2;
+        }
+
+        /**
+         * HELPER: whether the stones have a 5-cell window with 3 stones and no opposing stone.
+         */
+        private static boolean canMakeFour(long stones, long opposing) {
+            for (long window : LineCounter.WINDOWS)
+                if ((window & opposing) == 0 && bitCount(window & stones) >= 3) return true;
+            return false;
+        }
+
+        /**
+         * HELPER: whether playing the move makes a four for the stones.
+         */
+        private static boolean isFour(long stones, long opposing, long move) {
+            for (int window : LineCounter.CELL_WINDOWS[numberOfLeadingZeros(move)])
+                if ((LineCounter.WINDOWS[window] & opposing) == 0 && bitCount(LineCounter.WINDOWS[window] & stones) == 3)
+                    return true;
+            return false;
+        }
+    }
+
+    /////////////////////// MOVE ORDERING ////////////////////////////
+
+    /**
+     * HELPER: lazy, staged move generator working from a buffer reused at every node of its ply.
+     * Moves are returned one at a time as bits, so a cutoff skips the rest of the ordering work:
+     * the pv move, then moves completing five, moves blocking five, killer moves, and finally the
+     * remaining adjacent moves by manhattan distance to the last two moves, less a bonus for the
+     * history of cutoffs on the square. Under a threat only the forced moves are picked, in the same
+     * order, so forcing lines are searched with a branching factor near one.
+     */
+    static class MovePicker {
+        // stages, in order, each falls through to the next when it runs out of moves
+        private static final int PV = 0;
+        private static final int GENERATE_WINS = 1;
+        private static final int WINS = 2;
+        private static final int GENERATE_BLOCKS = 3;
+        private static final int BLOCKS = 4;
+        private static final int KILLERS = 5;
+        private static final int GENERATE_REST = 6;
+        private static final int REST = 7;
+        private static final int DONE = 8;
+
+        // killer moves of this ply, kept between nodes
+        private final long[] killers = new long[2];
+        // remaining moves and their ordering keys, lowest first
+        private final long[] moves = new long[64];
+        private final int[] keys = new int[64];
+
+        private int stage;
+        private int index;
+        private int count;
+        private long spaces;
+        private long player;
+        private boolean playerTurn;
+        private long pvMove;
+        private long playerMove;
+        private long opponentMove;
+        private long candidates;
+        private long pending;
+        // history of cutoffs by side and square for this node, null to order by distance alone
+        private int[][] history;
+
+        /**
+         * Prepares the picker for a node, the same arguments as the old expand plus a pv move (0 if none),
+         * the history of cutoffs to order and record by (null if none), and whether a threat restricts
+         * the moves to those answering it.
+         */
+        void init(long spaces, long player, boolean playerTurn, long pvMove, long playerMove, long opponentMove, int[][] history, boolean useForcedMoves) {
+            this.spaces = spaces;
+            this.player = player;
+            this.playerTurn = playerTurn;
+            this.pvMove = pvMove;
+            this.playerMove = playerMove;
+            this.opponentMove = opponentMove;
+            this.history = history;
+            this.candidates = Player150382405.candidates(spaces);
+            this.stage = PV;
+
+            if (useForcedMoves) {
+                long forced = playerTurn ? forcedMoves(player, player ^ spaces) : forcedMoves(player ^ spaces, player);
+                if (forced != 0) candidates = forced;
+            }
+        }
+
+        /**
+         * Returns the next move as a bit, or 0 when there are none left. Each stage falls through
+         * to the next when it runs out of moves.
+         */
+        @SuppressWarnings("fallthrough")
+        long next() {
+            switch (stage) {
+                case PV:
+                    stage = GENERATE_WINS;
+                    if ((pvMove & candidates) != 0) return take(pvMove);
+                    // fall through
+                case GENERATE_WINS:
+                    pending = fives(playerTurn ? player : player ^ spaces, candidates);
+                    stage = WINS;
+                    // fall through
+                case WINS:
+                    if (pending != 0) return take(highestOneBit(pending));
+                    stage = GENERATE_BLOCKS;
+                    // fall through
+                case GENERATE_BLOCKS:
+                    pending = fives(playerTurn ? player ^ spaces : player, candidates);
+                    stage = BLOCKS;
+                    // fall through
+                case BLOCKS:
+                    if (pending != 0) return take(highestOneBit(pending));
+                    index = 0;
+                    stage = KILLERS;
+                    // fall through
+                case KILLERS:
+                    while (index < killers.length) {
+                        long killer = killers[index++];
+                        if ((killer & candidates) != 0) return take(killer);
+                    }
+                    stage = GENERATE_REST;
+                    // fall through
+                case GENERATE_REST:
+                    score();
+                    stage = REST;
+                    // fall through
+                case REST:
+                    if (index == count) {
+                        stage = DONE;
+                        return 0;
+                    }
+                    // selection of the remaining move with the lowest key
+                    int best = index;
+                    for (int i = index + 1; i < count; i++)
+                        if (keys[i] < keys[best]) best = i;
+                    long move = moves[best];
+                    moves[best] = moves[index];
+                    keys[best] = keys[index];
+                    moves[index] = move;
+                    index++;
+                    return move;
+                default:
+                    return 0;
+            }
+        }
+
+        /**
+         * Records a move that caused a cutoff at this ply, as a killer and in the history of the
+         * side that made it, which grows by the square of the depth left.
+         */
+        void cutoff(long move, int depth) {
+            if (history != null) {
+                int[] scores = history[playerTurn ? 0 : 1];
+                int square = numberOfLeadingZeros(move);
+                scores[square] += depth * depth;
+                if (scores[square] >= HISTORY_LIMIT)
+                    for (int[] side : history)
+                        for (int i = 0; i < side.length; i++)
+                            side[i] >>= 1;
+            }
+
+            if (killers[0] == move) return;
+            killers[1] = killers[0];
+            killers[0] = move;
+        }
+
+        // removes a move from the candidates so later stages skip it
+        private long take(long move) {
+            candidates &= ~move;
+            pending &= ~move;
+            return move;
+        }
+
+        // fills the buffer with the remaining candidates and their keys
+        private void score() {
+            int playerIndex = numberOfLeadingZeros(playerMove);
+            int opponentIndex = numberOfLeadingZeros(opponentMove);
+            int[] scores = history == null ? null : history[playerTurn ? 0 : 1];
+
+            count = 0;
+            index = 0;
+            for (long remaining = candidates; remaining != 0; remaining ^= highestOneBit(remaining)) {
+                long move = highestOneBit(remaining);
+                int square = numberOfLeadingZeros(move);
+
+                int dist1 = playerIndex == 64 ? NO_DISTANCE : MANHATTAN[playerIndex][square];
+                int dist2 = opponentIndex == 64 ? NO_DISTANCE : MANHATTAN[opponentIndex][square];
+
+                moves[count] = move;
+                keys[count] = Math.min(dist1, dist2) * DISTANCE_WEIGHT;
+                if (scores != null) keys[count] -= Math.min(scores[square] >> HISTORY_SHIFT, HISTORY_MAX_BONUS);
+                count++;
+            }
+        }
+    }
+
+    /////////////////////// PARALLEL SEARCH ////////////////////////////
+
+    /**
+     * HELPER: a node whose younger children are searched in parallel. The window is shared
+     * by the children, and a cutoff aborts every task below the node.
+     */
+    private static class SplitPoint {
+        private final SplitPoint parent;
+        private final AtomicInteger alpha;
+        private final AtomicInteger beta;
+        private volatile boolean cutoff;
+
+        SplitPoint(SplitPoint parent, int alpha, int beta) {
+            this.parent = parent;
+            this.alpha = new AtomicInteger(alpha);
+            this.beta = new AtomicInteger(beta);
+        }
+
+        /**
+         * Narrows the window with a completed child value, flagging a cutoff if it closes.
+         */
+        void update(int value, boolean maximizing) {
+            if (maximizing) alpha.accumulateAndGet(value, Math::max);
+            else beta.accumulateAndGet(value, Math::min);
+
+            if (beta.get() <= alpha.get()) cutoff = true;
+        }
+
+        /**
+         * Whether this node or any ancestor has been cut off.
+         */
+        boolean aborted() {
+            for (SplitPoint node = this; node != null; node = node.parent)
+                if (node.cutoff) return true;
+            return false;
+        }
+    }
+
+    /**
+     * HELPER: searches one younger brother of a split point.
+     */
+    private class SearchTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final SplitPoint split;
+        private final long[] board;
+        private final LineCounter counter;
+        private final long prevMove;
+        private final int depth;
+        private final boolean maximizing;
+        // best line from the child, 0 terminated
+        private final long[] line;
+        // false if the search was aborted and the result is meaningless
+        private boolean completed;
+
+        SearchTask(SplitPoint split, long[] board, LineCounter counter, long prevMove, int depth, boolean maximizing) {
+            this.split = split;
+            this.board = board;
+            // each task runs on its own copy of the counter, with its move placed
+            this.counter = new LineCounter(counter);
+            this.counter.place(board[2], !maximizing);
+            this.prevMove = prevMove;
+            this.depth = depth;
+            this.maximizing = maximizing;
+            this.line = new long[depth];
+        }
+
+        @Override
+        protected Integer compute() {
+            if (split.aborted()) return 0;
+
+            // pick up the window narrowed by siblings that finished first
+            int value = ybw(board[0], board[1], board[2], prevMove, depth, split.alpha.get(), split.beta.get(), maximizing, split, counter, false, line);
+
+            if (split.aborted()) return 0;
+            split.update(value, !maximizing);
+            completed = true;
+            return value;
+        }
+    }
+
+    /**
+     * HELPER: one iteration of the root search, run as a task so the whole search happens on
+     * the workers of the pool.
+     */
+    private class RootTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final long spaces;
+        private final long player;
+        private final long opponentPreviousMove;
+        private final int depth;
+        private final long[] rootMoves;
+        private final int[] rootValues;
+        private final long[] line;
+
+        RootTask(long spaces, long player, long opponentPreviousMove, int depth, long[] rootMoves, int[] rootValues, long[] line) {
+            this.spaces = spaces;
+            this.player = player;
+            this.opponentPreviousMove = opponentPreviousMove;
+            this.depth = depth;
+            this.rootMoves = rootMoves;
+            this.rootValues = rootValues;
+            this.line = line;
+        }
+
+        @Override
+        protected Integer compute() {
+            return rootSearch(spaces, player, opponentPreviousMove, depth, rootMoves, rootValues, line);
+        }
+    }
+}
@@ -0,0 +1,387 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A depth-first proof-number (df-pn) solver, shared by both players, for positions that can be solved outright:
+ * late in the game when few squares are left, or once a threat is on the board.
+ *
+ * A solve proves or disproves that the player to move wins, and if it is disproved, whether the other player
+ * wins, which leaves a draw when neither can. Nodes are kept in a bounded store of proof and disproof numbers,
+ * two slots per bucket: the first keeps the entry whose subtree took the most work, the second is always
+ * replaced. A solve gives up with UNKNOWN once its node budget is spent, so the players fall back to their
+ * alpha-beta search.
+ *
+ * Boards are bitboards with square = row * 8 + col at bit square, as in OpeningBook.
+ */
+public class ProofNumberSearch {
+    static final int WIN = 1;
+    static final int DRAW = 0;
+    static final int LOSS = -1;
+    static final int UNKNOWN = 2;
+    static final int NO_MOVE = -1;
+
+    static final int STORE_MB = 16; // Default size of the node store in megabytes
+    static final long NODE_BUDGET = 500000; // Default number of nodes searched before giving up
+
+    private static final int SQUARES = 64;
+    private static final int INFINITY = 1 << 30;
+    static final int ENTRY_BYTES = 2 * Long.BYTES + Integer.BYTES; // Key, numbers and work of an entry
+
+    private static final long[] WINDOWS; // Every 5 square window
+    private static final long[] OPEN_WINDOWS; // Every 6 square window, for open threes
+    private static final long[] OPEN_ENDS; // The two end squares of each 6 square window
+
+    // Zobrist keys of the attacker and defender stones, and of the attacker being to move
+    private static final long[][] KEYS = new long[2][SQUARES];
+    private static final long ATTACKER_TO_MOVE;
+
+    static {
+        int[][] directions = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+        long[] windows = new long[SQUARES * directions.length];
+        long[] openWindows = new long[windows.length];
+        long[] openEnds = new long[windows.length];
+        int windowCount = 0;
+        int openCount = 0;
+
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                for (int[] direction : directions) {
+                    long window = 0;
+                    for (int i = 0; i < 6; i++) {
+                        int r = row + i * direction[0];
+                        int c = col + i * direction[1];
+                        if (r >= 8 || c < 0 || c >= 8) {
+                            window = -1;
+                            break;
+                        }
+                        window |= 1L << (r * 8 + c);
+                        if (i == 4) {
+                            windows[windowCount++] = window;
+                        }
+                    }
+                    if (window != -1) {
+                        openWindows[openCount] = window;
+                        openEnds[openCount++] = (1L << (row * 8 + col))
+                                | (1L << ((row + 5 * direction[0]) * 8 + col + 5 * direction[1]));
+                    }
+                }
+            }
+        }
+        WINDOWS = Arrays.copyOf(windows, windowCount);
+        OPEN_WINDOWS = Arrays.copyOf(openWindows, openCount);
+        OPEN_ENDS = Arrays.copyOf(openEnds, openCount);
+
+        Random random = new Random(0x5EED_DF9AL);
+        for (int square = 0; square < SQUARES; square++) {
+            KEYS[0][square] = random.nextLong();
+            KEYS[1][square] = random.nextLong();
+        }
+        ATTACKER_TO_MOVE = random.nextLong();
+    }
+
+    private final long nodeBudget;
+
+    // The node store, proof number in the high half of each number and disproof number in the low half
+    private final long[] keys;
+    private final long[] numbers;
+    private final int[] work;
+    private final int bucketMask;
+
+    // Moves of each ply, nearest the stones first
+    private final int[][] moves = new int[SQUARES + 1][SQUARES];
+
+    private long nodes;
+    private boolean aborted;
+    private int rootMove;
+    private int move;
+
+    ProofNumberSearch() {
+        this(STORE_MB, NODE_BUDGET);
+    }
+
+    /**
+     * @param storeMb The size of the node store in megabytes, rounded down to a power of two number of entries
+     * @param nodeBudget The number of nodes searched by each solve before giving up
+     */
+    ProofNumberSearch(int storeMb, long nodeBudget) {
+        this.nodeBudget = nodeBudget;
+        int entries = Integer.highestOneBit((int) Math.min((Math.max(1L, storeMb) << 20) / ENTRY_BYTES, 1 << 28));
+        keys = new long[entries];
+        numbers = new long[entries];
+        work = new int[entries];
+        bucketMask = (entries >> 1) - 1;
+    }
+
+    /**
+     * Whether a position is worth handing to the solver: few empty squares are left, or either player has a
+     * four or an open three
+     *
+     * @param toMove The stones of the player to move
+     * @param other The stones of the other player
+     * @param emptySquares The number of empty squares at or below which every position is solved
+     * @return True if the position should be solved
+     */
+    static boolean shouldSolve(long toMove, long other, int emptySquares) {
+        return Long.bitCount(~(toMove | other)) <= emptySquares || hasThreat(toMove, other)
+                || hasThreat(other, toMove);
+    }
+
+    /**
+     * @return True if the attacker has a four or an open three
+     */
+    static boolean hasThreat(long attacker, long defender) {
+        if (fiveSquares(attacker, defender) != 0) return true;
+        for (int w = 0; w < OPEN_WINDOWS.length; w++) {
+            long window = OPEN_WINDOWS[w];
+            if ((window & defender) == 0 && (OPEN_ENDS[w] & attacker) == 0
+                    && Long.bitCount(window & attacker) == 3) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Solves a position
+     *
+     * @param toMove The stones of the player to move
+     * @param other The stones of the other player
+     * @return WIN, DRAW or LOSS for the player to move, or UNKNOWN if the node budget ran out
+     */
+    int solve(long toMove, long other) {
+        nodes = 0;
+        aborted = false;
+        move = NO_MOVE;
+        if (hasFive(other)) return LOSS;
+
+        // Does the player to move win?
+        rootMove = NO_MOVE;
+        long hash = hash(toMove, other) ^ ATTACKER_TO_MOVE;
+        mid(toMove, other, true, hash, INFINITY, INFINITY, 0);
+        if (aborted) return UNKNOWN;
+        long root = lookup(hash);
+        if (proof(root) == 0) {
+            move = rootMove;
+            return WIN;
+        }
+
+        // If not, does the other player win?
+        rootMove = NO_MOVE;
+        hash = hash(other, toMove);
+        mid(other, toMove, false, hash, INFINITY, INFINITY, 0);
+        if (aborted) return UNKNOWN;
+        root = lookup(hash);
+        move = rootMove;
+        return proof(root) == 0 ? LOSS : DRAW;
+    }
+
+    /**
+     * @return The winning move of the last solve if it was a WIN, a drawing move if it was a DRAW, any move
+     * if it was a LOSS, or NO_MOVE
+     */
+    int getMove() {
+        return move;
+    }
+
+    /**
+     * @return The number of nodes searched by the last solve
+     */
+    long nodes() {
+        return nodes;
+    }
+
+    /**
+     * @return The size of the node store in bytes
+     */
+    long storeBytes() {
+        return (long) keys.length * ENTRY_BYTES;
+    }
+
+    /**
+     * @return The number of entries of the node store in use
+     */
+    int storeUsed() {
+        int used = 0;
+        for (long number : numbers) {
+            if (number != 0) used++;
+        }
+        return used;
+    }
+
+    void clear() {
+        Arrays.fill(keys, 0L);
+        Arrays.fill(numbers, 0L);
+        Arrays.fill(work, 0);
+    }
+
+    /**
+     * Expands a node until its proof or disproof number reaches its threshold, or it is solved
+     *
+     * @param attacker The stones of the player trying to win
+     * @param defender The stones of the other player
+     * @param attackerToMove Whether this is an OR node, where the attacker picks a move
+     * @param hash The hash of the node
+     * @param proofThreshold The proof number at which to return
+     * @param disproofThreshold The disproof number at which to return
+     * @param ply The number of moves made since the root
+     */
+    private void mid(long attacker, long defender, boolean attackerToMove, long hash, int proofThreshold,
+                     int disproofThreshold, int ply) {
+        if (++nodes > nodeBudget) {
+            aborted = true;
+            return;
+        }
+        long startNodes = nodes;
+
+        long mover = attackerToMove ? attacker : defender;
+        long opponent = attackerToMove ? defender : attacker;
+        long empty = ~(attacker | defender);
+
+        // A five for the player to move ends the game
+        long wins = fiveSquares(mover, opponent);
+        if (wins != 0) {
+            if (ply == 0) rootMove = Long.numberOfTrailingZeros(wins);
+            store(hash, attackerToMove ? 0 : INFINITY, attackerToMove ? INFINITY : 0, 1);
+            return;
+        }
+        // A full board is a draw, which the attacker fails to win
+        if (empty == 0) {
+            store(hash, INFINITY, 0, 1);
+            return;
+        }
+        // A four of the opponent has to be blocked, and two cannot be
+        long threats = fiveSquares(opponent, mover);
+        if (Long.bitCount(threats) > 1) {
+            store(hash, attackerToMove ? INFINITY : 0, attackerToMove ? 0 : INFINITY, 1);
+            return;
+        }
+        int count = generate(threats != 0 ? threats : empty, attacker | defender, moves[ply]);
+        int[] plyMoves = moves[ply];
+        int side = attackerToMove ? 0 : 1;
+
+        // OR nodes take the smallest proof number and sum the disproof numbers, AND nodes the other way round,
+        // so the loop works on the minimum and the sum whichever node this is
+        int minimumThreshold = attackerToMove ? proofThreshold : disproofThreshold;
+        int sumThreshold = attackerToMove ? disproofThreshold : proofThreshold;
+        while (true) {
+            int best = 0;
+            int minimum = INFINITY + 1;
+            int second = INFINITY + 1;
+            int bestSummed = 0;
+            int sum = 0;
+            for (int i = 0; i < count; i++) {
+                long entry = lookup(hash ^ KEYS[side][plyMoves[i]] ^ ATTACKER_TO_MOVE);
+                int minimised = attackerToMove ? proof(entry) : disproof(entry);
+                int summed = attackerToMove ? disproof(entry) : proof(entry);
+                sum = (int) Math.min(INFINITY, (long) sum + summed);
+                if (minimised < minimum) {
+                    second = minimum;
+                    minimum = minimised;
+                    best = i;
+                    bestSummed = summed;
+                } else if (minimised < second) {
+                    second = minimised;
+                }
+            }
+            minimum = Math.min(minimum, INFINITY);
+
+            if (minimum >= minimumThreshold || sum >= sumThreshold) {
+                if (ply == 0) rootMove = plyMoves[best];
+                int proof = attackerToMove ? minimum : sum;
+                int disproof = attackerToMove ? sum : minimum;
+                store(hash, proof, disproof, (int) Math.min(Integer.MAX_VALUE, nodes - startNodes + 1));
+                return;
+            }
+
+            int childMinimumThreshold = Math.min(minimumThreshold, second + 1);
+            int childSumThreshold = sumThreshold >= INFINITY ? INFINITY : sumThreshold - sum + bestSummed;
+            int square = plyMoves[best];
+            long stone = 1L << square;
+            mid(attackerToMove ? attacker | stone : attacker, attackerToMove ? defender : defender | stone,
+                    !attackerToMove, hash ^ KEYS[side][square] ^ ATTACKER_TO_MOVE,
+                    attackerToMove ? childMinimumThreshold : childSumThreshold,
+                    attackerToMove ? childSumThreshold : childMinimumThreshold, ply + 1);
+            if (aborted) return;
+        }
+    }
+
+    /**
+     * Lists the candidate squares, the ones next to a stone first
+     *
+     * @return The number of moves
+     */
+    private static int generate(long candidates, long stones, int[] out) {
+        long horizontal = stones | ((stones & 0x7F7F7F7F7F7F7F7FL) << 1) | ((stones & 0xFEFEFEFEFEFEFEFEL) >>> 1);
+        long near = (horizontal | (horizontal << 8) | (horizontal >>> 8)) & candidates;
+        int count = 0;
+        for (long squares = near; squares != 0; squares &= squares - 1) {
+            out[count++] = Long.numberOfTrailingZeros(squares);
+        }
+        for (long squares = candidates & ~near; squares != 0; squares &= squares - 1) {
+            out[count++] = Long.numberOfTrailingZeros(squares);
+        }
+        return count;
+    }
+
+    /**
+     * @return The empty squares where the attacker would make five
+     */
+    static long fiveSquares(long attacker, long defender) {
+        long squares = 0;
+        for (long window : WINDOWS) {
+            if ((window & defender) == 0 && Long.bitCount(window & attacker) == 4) {
+                squares |= window & ~attacker;
+            }
+        }
+        return squares;
+    }
+
+    private static boolean hasFive(long stones) {
+        for (long window : WINDOWS) {
+            if ((window & stones) == window) return true;
+        }
+        return false;
+    }
+
+    private static long hash(long attacker, long defender) {
+        long hash = 0;
+        for (long stones = attacker; stones != 0; stones &= stones - 1) {
+            hash ^= KEYS[0][Long.numberOfTrailingZeros(stones)];
+        }
+        for (long stones = defender; stones != 0; stones &= stones - 1) {
+            hash ^= KEYS[1][Long.numberOfTrailingZeros(stones)];
+        }
+        return hash;
+    }
+
+    /**
+     * @return The proof and disproof numbers of a node, 1 and 1 if it is not in the store
+     */
+    private long lookup(long hash) {
+        int slot = ((int) hash & bucketMask) << 1;
+        if (keys[slot] == hash && numbers[slot] != 0) return numbers[slot];
+        if (keys[slot + 1] == hash && numbers[slot + 1] != 0) return numbers[slot + 1];
+        return numbers(1, 1);
+    }
+
+    private void store(long hash, int proof, int disproof, int nodeWork) {
+        int slot = ((int) hash & bucketMask) << 1;
+        // First slot keeps the most worked subtree, second slot is always replaced
+        if (keys[slot] != hash && numbers[slot] != 0 && work[slot] > nodeWork) slot++;
+        keys[slot] = hash;
+        numbers[slot] = numbers(proof, disproof);
+        work[slot] = nodeWork;
+    }
+
+    private static long numbers(int proof, int disproof) {
+        return ((long) proof << 32) | disproof;
+    }
+
+    private static int proof(long numbers) {
+        return (int) (numbers >>> 32);
+    }
+
+    private static int disproof(long numbers) {
+        return (int) numbers;
+    }
+}
@@ -0,0 +1,405 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Search statistics of a player, shared by both players: what the alpha-beta search did for the last move, per
+ * iteration of iterative deepening and in total.
+ *
+ * Each search thread counts into its own Counters, plain fields with no synchronisation. The player hands their
+ * running totals over at the end of every iteration and of the move, and the report keeps the difference since the
+ * previous iteration. Counting is switched on with -Dgomoku.stats=true. ENABLED is a constant, so when it is off
+ * the JIT drops the counting along with the check and the players search as if the counters were not there.
+ *
+ * While counting, every iteration and every move is also committed as a JFR event, gomoku.SearchIteration and
+ * gomoku.SearchMove, for recordings that enable them, e.g. java -Dgomoku.stats=true
+ * -XX:StartFlightRecording:filename=search.jfr, then jfr print --events gomoku.SearchIteration search.jfr.
+ */
+public class SearchStats {
+    static final boolean ENABLED = Boolean.getBoolean("gomoku.stats");
+
+    /**
+     * Counters of one search thread, or totals over several
+     */
+    static class Counters {
+        long nodes; // Nodes searched, interior and leaves
+        long evaluations; // Leaves scored by the evaluation function
+        long tableProbes; // Transposition table lookups
+        long tableHits; // Lookups that found the position
+        long tableCutoffs; // Hits whose bound ended the node without searching it
+        long cutoffs; // Beta cutoffs
+        long firstMoveCutoffs; // Beta cutoffs by the first move searched
+
+        void add(Counters other) {
+            nodes += other.nodes;
+            evaluations += other.evaluations;
+            tableProbes += other.tableProbes;
+            tableHits += other.tableHits;
+            tableCutoffs += other.tableCutoffs;
+            cutoffs += other.cutoffs;
+            firstMoveCutoffs += other.firstMoveCutoffs;
+        }
+
+        void clear() {
+            nodes = 0;
+            evaluations = 0;
+            tableProbes = 0;
+            tableHits = 0;
+            tableCutoffs = 0;
+            cutoffs = 0;
+            firstMoveCutoffs = 0;
+        }
+
+        /**
+         * @return These counters less the earlier totals, for the work done since
+         */
+        Counters since(Counters earlier) {
+            Counters difference = new Counters();
+            difference.nodes = nodes - earlier.nodes;
+            difference.evaluations = evaluations - earlier.evaluations;
+            difference.tableProbes = tableProbes - earlier.tableProbes;
+            difference.tableHits = tableHits - earlier.tableHits;
+            difference.tableCutoffs = tableCutoffs - earlier.tableCutoffs;
+            difference.cutoffs = cutoffs - earlier.cutoffs;
+            difference.firstMoveCutoffs = firstMoveCutoffs - earlier.firstMoveCutoffs;
+            return difference;
+        }
+
+        double tableHitRate() {
+            return tableProbes == 0 ? 0 : (double) tableHits / tableProbes;
+        }
+
+        /**
+         * @return The share of beta cutoffs made by the first move, a measure of move ordering
+         */
+        double firstMoveCutoffRate() {
+            return cutoffs == 0 ? 0 : (double) firstMoveCutoffs / cutoffs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("nodes %d, evaluations %d, table probes %d, hits %.1f%%, table cutoffs %d, "
+                            + "cutoffs %d, first move cutoffs %.1f%%", nodes, evaluations, tableProbes,
+                    100 * tableHitRate(), tableCutoffs, cutoffs, 100 * firstMoveCutoffRate());
+        }
+    }
+
+    /**
+     * One iteration of the search of a move
+     */
+    static class Iteration {
+        final int depth;
+        final boolean completed; // False if time ran out during the iteration
+        final long time; // Nanoseconds
+        final Counters counters;
+        final int value; // Value of the best move, 0 if the player does not report it
+        final String principalVariation; // Null if the player does not report it
+
+        Iteration(int depth, boolean completed, long time, Counters counters) {
+            this(depth, completed, time, counters, 0, null);
+        }
+
+        Iteration(int depth, boolean completed, long time, Counters counters, int value, String principalVariation) {
+            this.depth = depth;
+            this.completed = completed;
+            this.time = time;
+            this.counters = counters;
+            this.value = value;
+            this.principalVariation = principalVariation;
+        }
+
+        /**
+         * @return The effective branching factor, the nodes of the iteration to the power of one over its depth
+         */
+        double branchingFactor() {
+            return depth == 0 ? 0 : Math.pow(Math.max(1, counters.nodes), 1.0 / depth);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("depth %d%s: %.2f ms, %s, branching factor %.2f%s", depth,
+                    completed ? "" : " (incomplete)", time / 1e6, counters, branchingFactor(),
+                    principalVariation == null ? "" : ", value " + value + ", pv " + principalVariation);
+        }
+    }
+
+    @Name("gomoku.SearchIteration")
+    @Label("Search Iteration")
+    @Category("Gomoku")
+    @Description("One iteration of a player's alpha-beta search")
+    static class IterationEvent extends Event {
+        @Label("Player")
+        String player;
+        @Label("Depth")
+        int depth;
+        @Label("Completed")
+        boolean completed;
+        @Label("Nodes")
+        long nodes;
+        @Label("Evaluations")
+        long evaluations;
+        @Label("Table Probes")
+        long tableProbes;
+        @Label("Table Hits")
+        long tableHits;
+        @Label("Table Cutoffs")
+        long tableCutoffs;
+        @Label("Cutoffs")
+        long cutoffs;
+        @Label("First Move Cutoffs")
+        long firstMoveCutoffs;
+        @Label("Branching Factor")
+        double branchingFactor;
+        @Label("Value")
+        int value;
+        @Label("Principal Variation")
+        String principalVariation;
+    }
+
+    @Name("gomoku.SearchMove")
+    @Label("Search Move")
+    @Category("Gomoku")
+    @Description("A player's search of one move, over all iterations and search threads")
+    static class MoveEvent extends Event {
+        @Label("Player")
+        String player;
+        @Label("Depth")
+        int depth;
+        @Label("Iterations")
+        int iterations;
+        @Label("Nodes")
+        long nodes;
+        @Label("Evaluations")
+        long evaluations;
+        @Label("Table Probes")
+        long tableProbes;
+        @Label("Table Hits")
+        long tableHits;
+        @Label("Table Cutoffs")
+        long tableCutoffs;
+        @Label("Cutoffs")
+        long cutoffs;
+        @Label("First Move Cutoffs")
+        long firstMoveCutoffs;
+        @Label("Ponder Depth")
+        int ponderDepth;
+        @Label("Ponder Nodes")
+        long ponderNodes;
+        @Label("Ponder Hit")
+        boolean ponderHit;
+    }
+
+    private final String player;
+    private final List<Iteration> iterations = new ArrayList<>();
+    private Counters total = new Counters();
+    private Counters previous = new Counters(); // Running totals at the end of the last iteration
+    private long moveStart;
+    private long iterationStart;
+    private long moveTime;
+    private int ponderDepth; // Deepest iteration of the ponder before the move, 0 if there was none
+    private long ponderNodes;
+    private boolean ponderHit; // Whether the opponent played the reply the ponder expected
+    private IterationEvent iterationEvent;
+    private MoveEvent moveEvent;
+
+    /**
+     * @param player The name of the player, as reported in the events
+     */
+    SearchStats(String player) {
+        this.player = player;
+    }
+
+    /**
+     * Start the report of a new move, the counters of every search thread should start from zero
+     */
+    void startMove() {
+        if (!ENABLED) return;
+
+        iterations.clear();
+        total = new Counters();
+        previous = new Counters();
+        moveTime = 0;
+        ponderDepth = 0;
+        ponderNodes = 0;
+        ponderHit = false;
+
+        moveEvent = new MoveEvent();
+        moveEvent.begin();
+        iterationEvent = new IterationEvent();
+        iterationEvent.begin();
+        moveStart = System.nanoTime();
+        iterationStart = moveStart;
+    }
+
+    /**
+     * End an iteration
+     *
+     * @param depth The depth of the iteration
+     * @param completed Whether the iteration finished, rather than running out of time
+     * @param totals The running totals of the threads searching the iterations, since the start of the move
+     */
+    void endIteration(int depth, boolean completed, Counters totals) {
+        endIteration(depth, completed, totals, 0, null);
+    }
+
+    /**
+     * End an iteration, with the result it found
+     *
+     * @param depth The depth of the iteration
+     * @param completed Whether the iteration finished, rather than running out of time
+     * @param totals The running totals of the threads searching the iterations, since the start of the move
+     * @param value The value of the best move
+     * @param principalVariation The principal variation, null if not known, only built by callers when ENABLED
+     */
+    void endIteration(int depth, boolean completed, Counters totals, int value, String principalVariation) {
+        if (!ENABLED) return;
+
+        long now = System.nanoTime();
+        Iteration iteration = new Iteration(depth, completed, now - iterationStart, totals.since(previous), value,
+                principalVariation);
+        iterations.add(iteration);
+        previous = new Counters();
+        previous.add(totals);
+        iterationStart = now;
+
+        iterationEvent.end();
+        if (iterationEvent.shouldCommit()) {
+            Counters counters = iteration.counters;
+            iterationEvent.player = player;
+            iterationEvent.depth = depth;
+            iterationEvent.completed = completed;
+            iterationEvent.nodes = counters.nodes;
+            iterationEvent.evaluations = counters.evaluations;
+            iterationEvent.tableProbes = counters.tableProbes;
+            iterationEvent.tableHits = counters.tableHits;
+            iterationEvent.tableCutoffs = counters.tableCutoffs;
+            iterationEvent.cutoffs = counters.cutoffs;
+            iterationEvent.firstMoveCutoffs = counters.firstMoveCutoffs;
+            iterationEvent.branchingFactor = iteration.branchingFactor();
+            iterationEvent.value = value;
+            iterationEvent.principalVariation = principalVariation;
+            iterationEvent.commit();
+        }
+        iterationEvent = new IterationEvent();
+        iterationEvent.begin();
+    }
+
+    /**
+     * Record the search on the opponent's time that came before the move, for players that ponder
+     *
+     * @param depth The deepest iteration the ponder completed, 0 if there was no ponder
+     * @param nodes The nodes the ponder searched
+     * @param hit Whether the opponent played the reply the ponder expected
+     */
+    void ponder(int depth, long nodes, boolean hit) {
+        if (!ENABLED) return;
+
+        ponderDepth = depth;
+        ponderNodes = nodes;
+        ponderHit = hit;
+    }
+
+    /**
+     * End the move
+     *
+     * @param totals The totals of every search thread over the move
+     */
+    void endMove(Counters totals) {
+        if (!ENABLED) return;
+
+        moveTime = System.nanoTime() - moveStart;
+        total = new Counters();
+        total.add(totals);
+
+        moveEvent.end();
+        if (moveEvent.shouldCommit()) {
+            moveEvent.player = player;
+            moveEvent.depth = getDepth();
+            moveEvent.iterations = iterations.size();
+            moveEvent.nodes = total.nodes;
+            moveEvent.evaluations = total.evaluations;
+            moveEvent.tableProbes = total.tableProbes;
+            moveEvent.tableHits = total.tableHits;
+            moveEvent.tableCutoffs = total.tableCutoffs;
+            moveEvent.cutoffs = total.cutoffs;
+            moveEvent.firstMoveCutoffs = total.firstMoveCutoffs;
+            moveEvent.ponderDepth = ponderDepth;
+            moveEvent.ponderNodes = ponderNodes;
+            moveEvent.ponderHit = ponderHit;
+            moveEvent.commit();
+        }
+    }
+
+    /**
+     * @return The iterations of the last move, in order
+     */
+    List<Iteration> getIterations() {
+        return Collections.unmodifiableList(iterations);
+    }
+
+    /**
+     * @return The totals of the last move over every search thread
+     */
+    Counters getTotal() {
+        return total;
+    }
+
+    /**
+     * @return The time the last move took in nanoseconds
+     */
+    long getMoveTime() {
+        return moveTime;
+    }
+
+    /**
+     * @return The depth of the ponder before the last move, 0 if there was none
+     */
+    int getPonderDepth() {
+        return ponderDepth;
+    }
+
+    /**
+     * @return The nodes the ponder before the last move searched
+     */
+    long getPonderNodes() {
+        return ponderNodes;
+    }
+
+    /**
+     * @return Whether the opponent played the reply the ponder before the last move expected
+     */
+    boolean isPonderHit() {
+        return ponderHit;
+    }
+
+    /**
+     * @return The depth of the deepest completed iteration of the last move, 0 if none completed
+     */
+    int getDepth() {
+        int depth = 0;
+        for (Iteration iteration : iterations) {
+            if (iteration.completed) depth = Math.max(depth, iteration.depth);
+        }
+        return depth;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder(String.format("%s: depth %d in %.2f ms, %s", player, getDepth(),
+                moveTime / 1e6, total));
+        if (ponderDepth > 0) {
+            report.append(String.format(", ponder depth %d, %d nodes, %s", ponderDepth, ponderNodes,
+                    ponderHit ? "hit" : "miss"));
+        }
+        for (Iteration iteration : iterations) {
+            report.append("\n  ").append(iteration);
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,157 @@
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time control for iterative deepening, shared by both players.
+ *
+ * Each move has a hard limit, the player's budget for the move, at which the iteration in progress is abandoned, and
+ * a soft limit, after which no new iteration is started. An abandoned iteration is wasted, so the player always plays
+ * the move of the last iteration that completed, and the soft limit is there to not start iterations that cannot
+ * finish. It starts as a fraction of the hard limit that depends on the game phase: openings are cheap to get right,
+ * the middle game needs the most time, and late positions are mostly left to the solver. It then follows the best
+ * move: a move that changes between iterations raises it towards the hard limit, a move that holds lowers it. No
+ * iteration is started that would not finish by the hard limit, going by how much longer each iteration took than
+ * the last.
+ *
+ * The hard limit is raised by a timer thread setting a volatile flag, so the searches check a field at every node
+ * rather than read the clock.
+ */
+public class TimeManager {
+    // Soft limit as a fraction of the hard limit, by game phase
+    static final double OPENING_SOFT = 0.25;
+    static final double MIDDLE_SOFT = 0.5;
+    static final double LATE_SOFT = 0.35;
+    static final int OPENING_EMPTY = 48; // Empty squares above which it is the opening
+    static final int LATE_EMPTY = 24; // Empty squares at or below which it is the late game
+
+    static final double UNSTABLE_SCALE = 1.5; // Soft limit scale when the best move changed in the last iteration
+    static final double STABLE_SCALE = 0.8; // Soft limit scale when the best move held for STABLE_ITERATIONS
+    static final int STABLE_ITERATIONS = 2;
+    static final double DEFAULT_GROWTH = 4; // Time of an iteration over the last, until two iterations are timed
+    static final long MIN_TIMED_ITERATION = 1000000; // Nanoseconds, shorter iterations are too noisy to predict from
+    static final long UNLIMITED = Long.MAX_VALUE; // Hard limit that is never reached, for searches to a fixed depth
+
+    // One daemon thread raises the flags of every time manager
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "TimeManager");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final long hardLimit; // Milliseconds
+
+    private volatile boolean stopped = false;
+    private int generation = 0; // Moves started, so a late timer from an earlier move raises nothing
+    private ScheduledFuture<?> timer = null;
+
+    private long start;
+    private double softLimit;
+    private long lastIterationStart; // Nanoseconds, as are the iteration times
+    private long lastIterationTime;
+    private double lastGrowth;
+    private double growth;
+    private int bestMove;
+    private int stableIterations;
+
+    /**
+     * @param hardLimit The budget of a move in milliseconds
+     */
+    TimeManager(long hardLimit) {
+        this.hardLimit = hardLimit;
+    }
+
+    /**
+     * Start the clock for a move
+     *
+     * @param emptySquares The empty squares of the board, for the game phase
+     */
+    synchronized void start(int emptySquares) {
+        if (timer != null) timer.cancel(false);
+        int moveGeneration = ++generation;
+        stopped = false;
+
+        start = System.currentTimeMillis();
+        lastIterationStart = System.nanoTime();
+        lastIterationTime = 0;
+        lastGrowth = 0;
+        growth = DEFAULT_GROWTH;
+        bestMove = -1;
+        stableIterations = 0;
+        if (emptySquares > OPENING_EMPTY) softLimit = hardLimit * OPENING_SOFT;
+        else if (emptySquares > LATE_EMPTY) softLimit = hardLimit * MIDDLE_SOFT;
+        else softLimit = hardLimit * LATE_SOFT;
+
+        timer = TIMER.schedule(() -> expire(moveGeneration), hardLimit, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void expire(int moveGeneration) {
+        if (moveGeneration == generation) stopped = true;
+    }
+
+    /**
+     * Abandon the move now, as if the hard limit was reached
+     */
+    void stop() {
+        stopped = true;
+    }
+
+    /**
+     * @return Whether the hard limit was reached, cheap enough to check at every node
+     */
+    boolean stopped() {
+        return stopped;
+    }
+
+    /**
+     * Record an iteration that completed
+     *
+     * @param move The best move the iteration found
+     */
+    void completed(int move) {
+        long now = System.nanoTime();
+        long time = now - lastIterationStart;
+        if (lastIterationTime >= MIN_TIMED_ITERATION) {
+            // Iterations alternate between cheap and dear, so go by the larger of the last two
+            double iterationGrowth = (double) time / lastIterationTime;
+            growth = Math.max(1, Math.max(iterationGrowth, lastGrowth));
+            lastGrowth = iterationGrowth;
+        }
+        lastIterationTime = time;
+        lastIterationStart = now;
+
+        if (bestMove != -1 && move != bestMove) {
+            softLimit = Math.min(hardLimit, softLimit * UNSTABLE_SCALE);
+            stableIterations = 0;
+        } else if (bestMove != -1 && ++stableIterations >= STABLE_ITERATIONS) {
+            softLimit *= STABLE_SCALE;
+            stableIterations = 0;
+        }
+        bestMove = move;
+    }
+
+    /**
+     * @return Whether to start another iteration: within the soft limit, and expected to finish by the hard limit
+     */
+    boolean startIteration() {
+        long elapsed = elapsed();
+        if (stopped || elapsed >= softLimit) return false;
+        lastIterationStart = System.nanoTime();
+        return elapsed + lastIterationTime * growth / 1e6 < hardLimit;
+    }
+
+    /**
+     * @return Milliseconds since the move started
+     */
+    long elapsed() {
+        return System.currentTimeMillis() - start;
+    }
+
+    /**
+     * @return The soft limit of the move as it stands, in milliseconds
+     */
+    long softLimit() {
+        return (long) softLimit;
+    }
+}
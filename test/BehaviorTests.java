@@ -5,6 +5,9 @@ import java.util.Random;
 
 import static java.awt.Color.WHITE;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -16,24 +19,69 @@ class BehaviorTests {
 
 
     /**
-     * Tests that the player takes the appropriate amount of time to decide
-     * on a moveCounter.
+     * Tests that the player decides on a move within its time budget, in a
+     * position past the opening book with no forced line for either side.
+     * The budget is the time manager's hard limit. The move comes before it
+     * as a rule: no iteration is started past the soft limit of the game
+     * phase, or when it could not finish by the hard limit. The search should
+     * only stop when the time manager declines another iteration.
      */
     @Test
     void testDecisionTime() {
+        Color[][] board = new Color[8][8];
+        int[][] moves = {{3, 3}, {4, 4}, {3, 4}, {4, 3}, {5, 5}, {2, 2}};
+        for (int i = 0; i < moves.length; i++)
+            board[moves[i][0]][moves[i][1]] = i % 2 == 0 ? WHITE : Color.BLACK;
+
         long startTime = System.currentTimeMillis();
-        Move move = player.chooseMove(generateBoard(), WHITE);
+        Move move = player.chooseMove(board, WHITE);
         long timeElapsed = System.currentTimeMillis() - startTime;
 
-        assertTrue(timeElapsed > 7000 && timeElapsed < 9000);
+        assertNotNull(move);
+        assertNull(board[move.row][move.col]);
+        assertTrue(player.depth > 0, "the move was not searched");
+        assertFalse(player.timeManager.startIteration(), "stopped after " + timeElapsed + " ms with time for another iteration");
+        assertTrue(timeElapsed <= Player150382405.TIME_LIMIT + 300, "took " + timeElapsed + " ms");
+    }
+
+    /**
+     * Tests that a deterministic player searches the same tree every time, which
+     * needs every split point to fork into its single worker pool.
+     */
+    @Test
+    void deterministicSearchTest() {
+        Color[][] board = new Color[8][8];
+        int[][] moves = {{3, 3}, {4, 4}, {3, 4}, {4, 3}, {5, 5}, {2, 2}};
+        for (int i = 0; i < moves.length; i++)
+            board[moves[i][0]][moves[i][1]] = i % 2 == 0 ? WHITE : Color.BLACK;
+
+        long[] nodes = new long[3];
+        Move[] chosen = new Move[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            Player150382405 deterministic = new Player150382405();
+            deterministic.setDeterministic(1);
+            deterministic.maxDepth = 6;
+            deterministic.timeManager = new TimeManager(TimeManager.UNLIMITED);
+            chosen[i] = deterministic.chooseMove(board, WHITE);
+            nodes[i] = deterministic.nodes.sum();
+            assertEquals(6, deterministic.depth);
+        }
+
+        for (int i = 1; i < nodes.length; i++) {
+            assertEquals(nodes[0], nodes[i]);
+            assertEquals(chosen[0].row, chosen[i].row);
+            assertEquals(chosen[0].col, chosen[i].col);
+        }
     }
 
     @Test
     void terminalTest() {
+        // five in the top row, the last stone played at the top left corner
         long board = 0xF800000000000000L;
-        assertEquals(100, player.terminal(board, board, 0, true));
-        assertEquals(player.terminal(board, board, 0, false), -100);
-        assertEquals(1, player.terminal(1L, 1L, 63, true));
+        long move = 0x8000000000000000L;
+        assertEquals(100, player.terminal(board, board, move, true));
+        assertEquals(-100, player.terminal(board, 0, move, false));
+        assertEquals(Integer.MAX_VALUE, player.terminal(1L, 1L, 1L, true));
     }
 
 
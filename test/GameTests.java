@@ -0,0 +1,163 @@
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GameTests {
+
+    @Test
+    void rowScoresMatchBaselineTest() {
+        boolean[] finished = new boolean[1];
+        for (int row = 0; row < 1 << 8; row++) {
+            for (int empty = 0; empty < 1 << 8; empty++) {
+                String line = "row " + Integer.toBinaryString(row) + " empty " + Integer.toBinaryString(empty);
+                finished[0] = false;
+                int expected = baselineEvaluateRow(row, empty, finished);
+
+                assertEquals(expected, Player150278980.Game.ROW_SCORES[(row << 8) | empty], line);
+                assertEquals(expected, Player150278980.Game.evaluateRowPattern(row, empty), line);
+
+                // The lookup marks the game finished exactly when the baseline did
+                Player150278980.Game game = new Player150278980.Game();
+                assertEquals(expected, game.evaluateRow(row, empty), line);
+                assertEquals(finished[0], game.isFinished(), line);
+            }
+        }
+    }
+
+    /**
+     * A frozen copy of the per line scoring Game used before the lookup table, the reference for the table. It marked
+     * the game finished through a field, here finished[0].
+     */
+    private static int baselineEvaluateRow(long row, long empty, boolean[] finished) {
+        int score = 0;
+
+        if ((row & (row >>> 1) & (row >>> 2) & ((row >>> 3) & row >>> 4)) != 0) { // Five's or over
+            finished[0] = true;
+            return Player150278980.SCORE_GAME_WIN;
+        }
+        long four = (row & (row >>> 1) & (row >>> 2) & (row >>> 3));
+        if (four != 0) { // Four's (Only 1 four possible, otherwise we would have an 8 and it would have been picked up in the Five's)
+            long rightEmpty = ((four >>> 1) & empty);
+            long leftEmpty = ((four << 4) & empty);
+
+            if (((rightEmpty << 5) & leftEmpty) != 0) {
+                score += 50000; // Straight 4
+                row &= ~(four | (four << 1) | (four << 2) | (four << 3)); // Remove four from row
+            } else if (rightEmpty != 0 || leftEmpty != 0) {
+                score += 8000; // Normal 4
+                row &= ~(four | (four << 1) | (four << 2) | (four << 3)); // Remove four from row
+            } else {
+                score += -20;
+            }
+        }
+        long three = (row & (row >>> 1) & (row >>> 2));
+        if (three != 0) { // Three's (with space on either side for 5's and excluding as part of a four)
+            long right2Empty = ((three >>> 2) & empty);
+            long rightEmpty = ((three >>> 1) & empty);
+            long leftEmpty = ((three << 3) & empty);
+            long left2Empty = ((three << 4) & empty);
+
+            boolean l1 = (((left2Empty >>> 1) & leftEmpty) & (rightEmpty << 4)) != 0;
+            boolean l2 = (((right2Empty << 5) & leftEmpty) & (rightEmpty << 4)) != 0;
+
+            if (l1 || l2) {
+                score += 4000 * Long.bitCount(three); // Has 1 three or 2
+                row &= ~(three | (three << 1) | (three << 2)); // Remove threes's from row
+            } else {
+                score += -20;
+            }
+        }
+        long two = (row & (row >>> 1));
+        score += Long.bitCount(two) * 8; // Two's
+        row &= ~(two | (two << 1));
+        score += Long.bitCount(row) * 2; // One's
+
+        return score;
+    }
+
+    @Test
+    void lineExtractionTest() {
+        Random random = new Random(0);
+        for (int t = 0; t < 1000; t++) {
+            long board = random.nextLong();
+            for (int row = 0; row < GomokuBoard.ROWS; row++) {
+                for (int col = 0; col < GomokuBoard.COLS; col++) {
+                    long rowLine = 0, columnLine = 0, diagonalLine = 0, antiDiagonalLine = 0;
+                    for (int i = 0; i < GomokuBoard.COLS; i++) {
+                        rowLine |= ((board >>> (row * GomokuBoard.COLS + i)) & 1L) << i;
+                        columnLine |= ((board >>> (i * GomokuBoard.COLS + col)) & 1L) << i;
+                        // Square of the diagonal and anti-diagonal in column i, if it is on the board
+                        int diagonalRow = row - col + i;
+                        int antiDiagonalRow = row + col - i;
+                        if (diagonalRow >= 0 && diagonalRow < GomokuBoard.ROWS) {
+                            diagonalLine |= ((board >>> (diagonalRow * GomokuBoard.COLS + i)) & 1L) << i;
+                        }
+                        if (antiDiagonalRow >= 0 && antiDiagonalRow < GomokuBoard.ROWS) {
+                            antiDiagonalLine |= ((board >>> (antiDiagonalRow * GomokuBoard.COLS + i)) & 1L) << i;
+                        }
+                    }
+
+                    long diagonalMask = Player150278980.Game.DIAGONAL_MASKS[Player150278980.Game.diagonalIndex(row, col)];
+                    long antiDiagonalMask = Player150278980.Game.ANTI_DIAGONAL_MASKS[Player150278980.Game.antiDiagonalIndex(row, col)];
+                    assertEquals(rowLine, Player150278980.Game.extractRow(board, row));
+                    assertEquals(columnLine, Player150278980.Game.extractColumn(board, col));
+                    assertEquals(diagonalLine, Player150278980.Game.extractDiagonal(board, diagonalMask));
+                    assertEquals(antiDiagonalLine, Player150278980.Game.extractDiagonal(board, antiDiagonalMask));
+                }
+            }
+        }
+    }
+
+    @Test
+    void symmetricPositionsTest() {
+        Random random = new Random(0);
+        for (int t = 0; t < 1000; t++) {
+            int symmetry = 1 + random.nextInt(Player150278980.Game.SYMMETRIES - 1);
+            Player150278980.Game game = new Player150278980.Game();
+            Player150278980.Game symmetric = new Player150278980.Game();
+            game.sync(new Color[GomokuBoard.ROWS][GomokuBoard.COLS], Color.white);
+            symmetric.sync(new Color[GomokuBoard.ROWS][GomokuBoard.COLS], Color.white);
+
+            // Random games, the same moves under a symmetry must give the same hash and score
+            int moves = 1 + random.nextInt(30);
+            for (int i = 0; i < moves && !game.isFinished(); i++) {
+                int square;
+                do {
+                    square = random.nextInt(GomokuBoard.ROWS * GomokuBoard.COLS);
+                } while ((game.getEmptyBoard() & (1L << square)) == 0);
+                game.move(square);
+                symmetric.move(Player150278980.Game.SYMMETRY_SQUARES[symmetry][square]);
+
+                assertEquals(game.getHash(), symmetric.getHash());
+                assertEquals(game.getScore(), symmetric.getScore());
+            }
+        }
+    }
+
+    @Test
+    void fiveFinishesGameTest() {
+        int[][] directions = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+        for (int[] direction : directions) {
+            Player150278980.Game game = new Player150278980.Game();
+            game.sync(new Color[GomokuBoard.ROWS][GomokuBoard.COLS], Color.white);
+
+            int startCol = direction[1] < 0 ? 6 : 1;
+            for (int i = 0; i < 5; i++) {
+                assertFalse(game.isFinished());
+                game.move(new Move(1 + i * direction[0], startCol + i * direction[1]), true);
+                if (i < 4) {
+                    // The other player answers out of the way on the bottom row
+                    game.move(new Move(7, 2 * i), true);
+                }
+            }
+
+            assertTrue(game.isFinished());
+            assertEquals(Player150278980.PLAYER_ME, game.getWinner());
+        }
+    }
+}
@@ -0,0 +1,37 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OpeningBookTests {
+
+    @Test
+    void symmetricLookupTest(@TempDir Path directory) throws IOException {
+        // Stones at (3,3) for the player to move and (3,4) for the other, book move (4,3)
+        long toMove = 1L << (3 * 8 + 3);
+        long other = 1L << (3 * 8 + 4);
+        OpeningBook.Writer writer = new OpeningBook.Writer();
+        writer.add(toMove, other, 4 * 8 + 3, 42, 8);
+        writer.add(1L << 36, 0, 4 * 8 + 5, 7, 6);
+
+        Path path = directory.resolve("test.book");
+        writer.write(path);
+        OpeningBook book = OpeningBook.open(path);
+
+        assertEquals(2, book.size());
+        assertEquals(4 * 8 + 3, book.lookup(toMove, other));
+        assertEquals(42, book.getScore(toMove, other));
+        assertEquals(8, book.getDepth(toMove, other));
+
+        // Mirrored left to right: (3,4) and (3,3), book move (4,4)
+        assertEquals(4 * 8 + 4, book.lookup(1L << (3 * 8 + 4), 1L << (3 * 8 + 3)));
+        // Transposed: (3,3) and (4,3), book move (3,4)
+        assertEquals(3 * 8 + 4, book.lookup(1L << (3 * 8 + 3), 1L << (4 * 8 + 3)));
+
+        // A position that is not in the book, nor symmetric to one
+        assertEquals(OpeningBook.NO_MOVE, book.lookup(toMove, 1L << (5 * 8 + 4)));
+    }
+}
@@ -0,0 +1,94 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProofNumberSearchTests {
+
+    @Test
+    void winTest() {
+        // An open four anywhere on the board
+        ProofNumberSearch solver = new ProofNumberSearch(1, 100000);
+        long[] position = position(
+                "........",
+                "........",
+                "..XXXX..",
+                "........",
+                "...OO...",
+                "....O...",
+                "........",
+                "........");
+        assertEquals(ProofNumberSearch.WIN, solver.solve(position[0], position[1]));
+        int move = solver.getMove();
+        assertTrue(move == 2 * 8 + 1 || move == 2 * 8 + 6, "move " + move);
+    }
+
+    @Test
+    void lossTest() {
+        // O has two fours, X can only block one
+        ProofNumberSearch solver = new ProofNumberSearch(1, 100000);
+        long[] position = position(
+                "OOOO....",
+                "........",
+                "......X.",
+                "X..X....",
+                "......XO",
+                ".......O",
+                ".......O",
+                ".......O");
+        assertEquals(ProofNumberSearch.LOSS, solver.solve(position[0], position[1]));
+    }
+
+    @Test
+    void drawTest() {
+        // Checked against an exhaustive search
+        ProofNumberSearch solver = new ProofNumberSearch(4, 1000000);
+        long[] position = position(
+                ".XX.XOXO",
+                "XOXOOOOX",
+                "XXXOXOXO",
+                "XOOX...O",
+                ".XXXOOXX",
+                ".OOXOX.X",
+                ".OX..OOX",
+                ".O.O.OOX");
+        assertEquals(ProofNumberSearch.DRAW, solver.solve(position[0], position[1]));
+
+        // After the drawing move the other player cannot win either
+        long move = 1L << solver.getMove();
+        assertEquals(0, (position[0] | position[1]) & move);
+        assertEquals(ProofNumberSearch.DRAW, solver.solve(position[1], position[0] | move));
+    }
+
+    @Test
+    void unknownTest() {
+        // Too many empty squares to solve in 1000 nodes
+        ProofNumberSearch solver = new ProofNumberSearch(1, 1000);
+        long[] position = position(
+                "........",
+                "........",
+                "........",
+                "...XO...",
+                "...OX...",
+                "........",
+                "........",
+                "........");
+        assertEquals(ProofNumberSearch.UNKNOWN, solver.solve(position[0], position[1]));
+        assertFalse(ProofNumberSearch.shouldSolve(position[0], position[1], 16));
+    }
+
+    /**
+     * @return The stones of X, who is to move, and of O
+     */
+    private static long[] position(String... rows) {
+        long[] position = new long[2];
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                if (rows[row].charAt(col) == 'X') position[0] |= 1L << (row * 8 + col);
+                if (rows[row].charAt(col) == 'O') position[1] |= 1L << (row * 8 + col);
+            }
+        }
+        return position;
+    }
+}
@@ -0,0 +1,69 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SearchStatsTests {
+
+    @Test
+    void countersTest() {
+        SearchStats.Counters earlier = new SearchStats.Counters();
+        earlier.nodes = 100;
+        earlier.cutoffs = 10;
+        earlier.firstMoveCutoffs = 9;
+
+        SearchStats.Counters helper = new SearchStats.Counters();
+        helper.nodes = 50;
+        helper.tableProbes = 40;
+        helper.tableHits = 10;
+
+        SearchStats.Counters totals = new SearchStats.Counters();
+        totals.add(earlier);
+        totals.add(helper);
+        totals.cutoffs += 10;
+        totals.firstMoveCutoffs += 6;
+
+        // The work since the earlier totals is the helper's and the extra cutoffs
+        SearchStats.Counters since = totals.since(earlier);
+        assertEquals(50, since.nodes);
+        assertEquals(10, since.cutoffs);
+        assertEquals(0.6, since.firstMoveCutoffRate(), 1e-9);
+        assertEquals(0.25, totals.tableHitRate(), 1e-9);
+        assertEquals(0.75, totals.firstMoveCutoffRate(), 1e-9);
+    }
+
+    @Test
+    void branchingFactorTest() {
+        SearchStats.Counters counters = new SearchStats.Counters();
+        counters.nodes = 10000;
+        SearchStats.Iteration iteration = new SearchStats.Iteration(4, true, 0, counters);
+        assertEquals(10, iteration.branchingFactor(), 1e-9);
+    }
+
+    @Test
+    void ponderTest() {
+        SearchStats stats = new SearchStats("test");
+        stats.startMove();
+        stats.ponder(6, 1000, true);
+        stats.endMove(new SearchStats.Counters());
+        assertEquals(6, stats.getPonderDepth());
+        assertEquals(1000, stats.getPonderNodes());
+        assertTrue(stats.isPonderHit());
+        assertTrue(stats.toString().endsWith(", ponder depth 6, 1000 nodes, hit"), stats.toString());
+
+        // A new move forgets the last ponder
+        stats.startMove();
+        stats.endMove(new SearchStats.Counters());
+        assertEquals(0, stats.getPonderDepth());
+        assertFalse(stats.toString().contains("ponder"));
+    }
+
+    @Test
+    void principalVariationTest() {
+        SearchStats.Counters counters = new SearchStats.Counters();
+        assertFalse(new SearchStats.Iteration(2, true, 0, counters).toString().contains("pv"));
+        assertTrue(new SearchStats.Iteration(2, true, 0, counters, 3, "(3,4) (4,4)").toString()
+                .endsWith(", value 3, pv (3,4) (4,4)"));
+    }
+}
@@ -0,0 +1,40 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimeManagerTests {
+
+    @Test
+    void softLimitTest() {
+        TimeManager timeManager = new TimeManager(1000);
+        timeManager.start(60);
+        assertEquals(250, timeManager.softLimit());
+        timeManager.start(40);
+        assertEquals(500, timeManager.softLimit());
+
+        // A best move that changes raises the soft limit, one that holds for two iterations lowers it
+        timeManager.completed(1);
+        timeManager.completed(2);
+        assertEquals(750, timeManager.softLimit());
+        timeManager.completed(2);
+        timeManager.completed(2);
+        assertEquals(600, timeManager.softLimit());
+    }
+
+    @Test
+    void hardLimitTest() throws InterruptedException {
+        TimeManager timeManager = new TimeManager(20);
+        timeManager.start(40);
+        assertFalse(timeManager.stopped());
+        assertTrue(timeManager.startIteration());
+        Thread.sleep(200);
+        assertTrue(timeManager.stopped());
+        assertFalse(timeManager.startIteration());
+
+        // A new move starts the clock again
+        timeManager.start(40);
+        assertFalse(timeManager.stopped());
+    }
+}
@@ -0,0 +1,71 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.*;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TranspositionTableTests {
+
+    @Test
+    void storeAndGetTest(@TempDir Path directory) throws IOException {
+        Player150278980.TranspositionTable table = Player150278980.TranspositionTable.open(directory.resolve("tt"), 1);
+        long hash = table.getHash(27, Player150278980.PLAYER_ME) ^ table.getEmptyHash();
+        table.add(hash, Player150278980.TranspositionTable.EXACT, 1234, 5, 36);
+        table.force();
+
+        // Reopened the entry is still there, as it would be for the next process
+        table = Player150278980.TranspositionTable.open(directory.resolve("tt"), 1);
+        long entry = table.get(hash);
+        assertEquals(1234, Player150278980.TranspositionTable.getScore(entry));
+        assertEquals(5, Player150278980.TranspositionTable.getDepth(entry));
+        assertEquals(36, Player150278980.TranspositionTable.getMove(entry));
+
+        // A table of another size does not trust the file
+        table = Player150278980.TranspositionTable.open(directory.resolve("tt"), 2);
+        assertEquals(Player150278980.TranspositionTable.MISS, table.get(hash));
+    }
+
+    @Test
+    void persistsAcrossRestartsTest(@TempDir Path directory) throws IOException {
+        Player150278980.TranspositionTable original = Player150278980.transpositionTable;
+        try {
+            Player150278980.transpositionTable = Player150278980.TranspositionTable.open(directory.resolve("tt"), 4);
+            Player150278980 first = search();
+
+            // A new table on the same file, as after a restart
+            Player150278980.transpositionTable = Player150278980.TranspositionTable.open(directory.resolve("tt"), 4);
+            Player150278980 second = search();
+
+            double hitRate = second.stats.getTotal().tableHitRate();
+            assertTrue(hitRate > 0.5, "hit rate " + hitRate);
+            assertTrue(second.nodes < first.nodes, second.nodes + " nodes after restart, " + first.nodes + " before");
+        } finally {
+            Player150278980.transpositionTable = original;
+        }
+    }
+
+    private static Player150278980 search() {
+        // White moved first and is to move again, alternating from (3,3)
+        int[][] moves = {{3, 3}, {3, 4}, {4, 4}, {2, 2}};
+        Color[][] board = new Color[GomokuBoard.ROWS][GomokuBoard.COLS];
+        Player150278980.Game game = new Player150278980.Game();
+        game.sync(new Color[GomokuBoard.ROWS][GomokuBoard.COLS], Color.white);
+        for (int i = 0; i < moves.length; i++) {
+            board[moves[i][0]][moves[i][1]] = i % 2 == 0 ? Color.white : Color.black;
+            game.move(new Move(moves[i][0], moves[i][1]), true);
+        }
+        assertEquals(4, Long.bitCount(~game.getEmptyBoard()));
+        assertEquals(2, Long.bitCount(game.getMeBoard()));
+
+        Player150278980 player = new Player150278980(game, 1);
+        player.maxDepth = 6;
+        player.useBook = false;
+        player.chooseMove(board, Color.white);
+        assertTrue(player.depth > 0, "the move was not searched");
+        return player;
+    }
+}
@@ -19,10 +19,11 @@ class UtilTests {
     void terminalTest() {
         long spaces = 0xFF00000000000000L;
         long player = 0x7C00000000000000L;
-        long move = 0x08000000000000000L;
+        long move = 0x0400000000000000L;
 
-        assertEquals(8, this.player.terminal(spaces, player, move, true));
-        assertEquals(this.player.terminal(spaces, player, move, false), -8);
+        // the player's five in the top row is a win, and a loss when the stones are the opponent's
+        assertEquals(100, this.player.terminal(spaces, player, move, true));
+        assertEquals(-100, this.player.terminal(spaces, spaces ^ player, move, false));
     }
     @Test
     void colorConversionTest() {
@@ -99,11 +100,90 @@ class UtilTests {
                 player.clockwise(rowOpponent)
         };
 
-        assertEquals(15, player.findThrees(pTransforms, o1));
+        // a single open three, worth T_OPEN_THREE
+        assertEquals(2, player.findThrees(pTransforms, o1));
         assertEquals(0, player.findThrees(o1, o1));
         assertEquals(0, player.findThrees(pTransforms, o2));
     }
 
+    @Test
+    void lineCounterTest() {
+        assertEquals(96, Player150382405.LineCounter.WINDOWS.length);
+
+        long four = 0x000F000000000000L;
+        Player150382405.LineCounter counter = new Player150382405.LineCounter(four, 0x0000000000000100L);
+        int value = counter.evaluate();
+        assertTrue(value > 0);
+        assertEquals(Integer.MAX_VALUE, counter.terminal(four | 0x0000000000000100L));
+
+        // completing the five is a win, removing it restores the previous value
+        counter.place(0x0010000000000000L, true);
+        assertEquals(100, counter.terminal(0x001F000000000100L));
+        counter.remove(0x0010000000000000L, true);
+        assertEquals(value, counter.evaluate());
+
+        // the opponent blocking the four lowers the value, and the game goes on
+        counter.place(0x0010000000000000L, false);
+        assertTrue(counter.evaluate() < value);
+        assertEquals(Integer.MAX_VALUE, counter.terminal(0x001F000000000100L));
+
+        // the opponent completing five is a loss, removing it restores the game
+        long opponentFour = 0x00000000F0000000L;
+        counter = new Player150382405.LineCounter(0x0000000000000100L, opponentFour);
+        counter.place(0x0000000008000000L, false);
+        assertEquals(-100, counter.terminal(0x00000000F8000100L));
+        counter.remove(0x0000000008000000L, false);
+        assertEquals(Integer.MAX_VALUE, counter.terminal(0x00000000F0000100L));
+    }
+
+    @Test
+    void forcedMovesTest() {
+        // no threat, no restriction
+        assertEquals(0, Player150382405.forcedMoves(0x0000000000001000L, 0x0000001000000000L));
+
+        // an open three in row 3 is answered at either end or in the gap it leaves in a 6-cell window
+        long three = 0x0000003800000000L;
+        assertEquals(0x000000C600000000L, Player150382405.forcedMoves(0, three));
+        // or by making a four
+        assertEquals(0x000000C600001800L, Player150382405.forcedMoves(0x000000000000E000L, three));
+
+        // a four blocked at one end is answered at the other
+        long four = 0x0000007800000000L;
+        assertEquals(0x0000000400000000L, Player150382405.forcedMoves(0x0000008000000000L, four));
+        // unless the player completes five first
+        assertEquals(0x0000000000000800L, Player150382405.forcedMoves(0x000000800000F000L, four));
+
+        // both players find the same moves, their bitboards are the reverse of each other
+        Random random = new Random(0);
+        for (int i = 0; i < 10000; i++) {
+            long stones = random.nextLong() & random.nextLong();
+            long opposing = random.nextLong() & random.nextLong() & ~stones;
+            assertEquals(Long.reverse(Player150382405.forcedMoves(stones, opposing)),
+                    Player150278980.ThreatSearch.forcedMoves(Long.reverse(stones), Long.reverse(opposing)));
+        }
+    }
+
+    @Test
+    void threatSearchCombinationTest() {
+        // ......X.
+        // .X....XO
+        // ..X..X..
+        // ...O....
+        // XOO...O.
+        // ......XX
+        // .....OO.
+        // XO.O....
+        long attacker = 0x0242240080030080L;
+        long defender = 0x0001001062000650L;
+        long refuted = 0x8000000000000000L >>> 28;
+
+        // combining threats from (3,4) looks winning, but answering the first threat gives O a
+        // four to make, and the solver proves O then wins
+        ProofNumberSearch solver = new ProofNumberSearch();
+        assertEquals(ProofNumberSearch.WIN, solver.solve(Long.reverse(defender), Long.reverse(attacker | refuted)));
+        assertEquals(0, new Player150382405.ThreatSpaceSearch().search(attacker, defender));
+    }
+
     @Test
     void antidiagonalTest() {
         long bitboard = 0xFF00000000000000L;
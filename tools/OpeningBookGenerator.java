@@ -0,0 +1,141 @@
+import java.awt.*;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Builds the opening book by searching every position of the first plies with Player150278980.
+ *
+ * The book covers both colours. Where the book player is to move the position is searched to a fixed depth and only
+ * the move found is followed, where the opponent is to move every reply next to a stone is followed, one per set of
+ * symmetric replies. Lookups in the written book are timed at the end.
+ *
+ * Usage: java OpeningBookGenerator [plies] [depth] [output]
+ */
+public class OpeningBookGenerator {
+    private final int depth;
+    private final OpeningBook.Writer writer = new OpeningBook.Writer();
+    private final Set<Long> searched = new HashSet<>();
+    private int[] moves = new int[GomokuBoard.ROWS * GomokuBoard.COLS];
+    private int count = 0;
+    // The stones of the player to move and of the other player of every position searched
+    private long[] positions = new long[64];
+    private int positionCount = 0;
+
+    private OpeningBookGenerator(int depth) {
+        this.depth = depth;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int plies = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        Path output = Paths.get(args.length > 2 ? args[2] : OpeningBook.DEFAULT_PATH);
+
+        OpeningBookGenerator generator = new OpeningBookGenerator(depth);
+        long start = System.currentTimeMillis();
+        generator.bookMove(plies); // Book plays first
+        generator.replies(plies); // Book plays second
+        generator.writer.write(output);
+        System.out.println(generator.writer.size() + " positions written to " + output + " in "
+                + (System.currentTimeMillis() - start) / 1000 + "s");
+
+        generator.timeLookups(output);
+    }
+
+    /**
+     * Searches the position for the book player to move, then follows the move found
+     */
+    private void bookMove(int plies) {
+        long toMove = stones(count % 2);
+        long other = stones((count + 1) % 2);
+        if (!searched.add(OpeningBook.key(toMove, other))) return;
+
+        Color me = count % 2 == 0 ? Color.white : Color.black;
+        Color[][] board = new Color[GomokuBoard.ROWS][GomokuBoard.COLS];
+        Player150278980.Game game = new Player150278980.Game();
+        game.sync(new Color[GomokuBoard.ROWS][GomokuBoard.COLS], me);
+        for (int i = 0; i < count; i++) {
+            Move move = new Move(moves[i] / GomokuBoard.COLS, moves[i] % GomokuBoard.COLS);
+            board[move.row][move.col] = i % 2 == 0 ? Color.white : Color.black;
+            game.move(move, true);
+        }
+
+        Player150278980.transpositionTable.clear();
+        Player150278980 player = new Player150278980(game, 1);
+        player.maxDepth = depth;
+        player.useBook = false;
+        Move move = player.chooseMove(board, me);
+        if (move == null) return;
+
+        int square = move.row * GomokuBoard.COLS + move.col;
+        writer.add(toMove, other, square, player.score, player.depth);
+        if (2 * positionCount == positions.length) positions = Arrays.copyOf(positions, positions.length * 2);
+        positions[2 * positionCount] = toMove;
+        positions[2 * positionCount++ + 1] = other;
+        System.out.println(count + " plies, " + writer.size() + " positions: " + move + " score " + player.score
+                + " depth " + player.depth);
+
+        moves[count++] = square;
+        replies(plies - 1);
+        count--;
+    }
+
+    /**
+     * Follows every reply of the opponent next to a stone, or anywhere on the empty board
+     */
+    private void replies(int plies) {
+        if (plies <= 0) return;
+
+        long taken = stones(0) | stones(1);
+        long candidates = taken == 0 ? -1L : neighbours(taken) & ~taken;
+        Set<Long> followed = new HashSet<>();
+        for (long squares = candidates; squares != 0; squares &= squares - 1) {
+            int square = Long.numberOfTrailingZeros(squares);
+            moves[count++] = square;
+            // After the reply the book player is to move
+            if (followed.add(OpeningBook.key(stones(count % 2), stones((count + 1) % 2)))) {
+                bookMove(plies - 1);
+            }
+            count--;
+        }
+    }
+
+    /**
+     * @param parity 0 for the stones of the first player, 1 for the second
+     * @return The stones of that player in the current line
+     */
+    private long stones(int parity) {
+        long stones = 0;
+        for (int i = parity; i < count; i += 2) {
+            stones |= 1L << moves[i];
+        }
+        return stones;
+    }
+
+    private static long neighbours(long stones) {
+        long horizontal = stones | ((stones & 0x7F7F7F7F7F7F7F7FL) << 1) | ((stones & 0xFEFEFEFEFEFEFEFEL) >>> 1);
+        return horizontal | (horizontal << GomokuBoard.COLS) | (horizontal >>> GomokuBoard.COLS);
+    }
+
+    /**
+     * Reopens the book and times a lookup of every position that was searched
+     */
+    private void timeLookups(Path output) throws IOException {
+        OpeningBook book = OpeningBook.open(output);
+        int rounds = 1000;
+
+        int hits = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (int i = 0; i < positionCount; i++) {
+                if (book.lookup(positions[2 * i], positions[2 * i + 1]) != OpeningBook.NO_MOVE) hits++;
+            }
+        }
+        long time = System.nanoTime() - start;
+        System.out.printf("%d of %d positions hit, %.2f us per lookup%n", hits / rounds, positionCount,
+                time / 1000.0 / Math.max(1, (long) positionCount * rounds));
+    }
+}
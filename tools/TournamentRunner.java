@@ -0,0 +1,343 @@
+import java.awt.*;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.Constructor;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Plays a match between two GomokuPlayer classes without the GomokuReferee window, many games at a time.
+ *
+ * Each game gets new instances of both players, which swap colours every game. The rules are those of
+ * GomokuBoard.makeMove: white moves first, five or more in a row wins, a null move, an exception, a move off the
+ * board or on a taken square loses, and the game is drawn when the board is full or no line of five is open to
+ * either player any more. A move over the time limit loses as well. GomokuReferee measures the CPU time of the
+ * calling thread, which misses the helper threads of a parallel search, so the time here is wall clock.
+ *
+ * A row is written to the CSV as each game finishes, with the running score, Elo difference and its 95% error
+ * for the first player, and moves per second. Move latency percentiles of each player are written to a second
+ * CSV next to it at the end.
+ *
+ * Games run on a pool of worker threads, so players that search with several threads of their own share the
+ * cores, and players with static state (Player150278980 shares its transposition table) share it between games.
+ *
+ * Usage: java TournamentRunner playerA playerB [games] [workers] [time limit s] [output]
+ */
+public class TournamentRunner {
+    static final double DEFAULT_TIME_LIMIT = 10.0; // Seconds per move, as GomokuReferee
+    static final String DEFAULT_OUTPUT = "tournament.csv";
+
+    // Results from the first player's point of view
+    static final int LOSS = 0;
+    static final int DRAW = 1;
+    static final int WIN = 2;
+
+    private final Class<? extends GomokuPlayer> playerA;
+    private final Class<? extends GomokuPlayer> playerB;
+    private final long timeLimitNanos;
+
+    private TournamentRunner(Class<? extends GomokuPlayer> playerA, Class<? extends GomokuPlayer> playerB,
+                             double timeLimit) {
+        this.playerA = playerA;
+        this.playerB = playerB;
+        this.timeLimitNanos = (long) (timeLimit * 1e9);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: java TournamentRunner playerA playerB [games] [workers] [time limit s] [output]");
+            System.exit(1);
+        }
+        Class<? extends GomokuPlayer> playerA = Class.forName(args[0]).asSubclass(GomokuPlayer.class);
+        Class<? extends GomokuPlayer> playerB = Class.forName(args[1]).asSubclass(GomokuPlayer.class);
+        int games = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int workers = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        double timeLimit = args.length > 4 ? Double.parseDouble(args[4]) : DEFAULT_TIME_LIMIT;
+        Path output = Paths.get(args.length > 5 ? args[5] : DEFAULT_OUTPUT);
+
+        new TournamentRunner(playerA, playerB, timeLimit).run(games, workers, output);
+    }
+
+    /**
+     * Plays the games and writes the results as they come in
+     */
+    private void run(int games, int workers, Path output) throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        CompletionService<Result> results = new ExecutorCompletionService<>(pool);
+        for (int game = 0; game < games; game++) {
+            int number = game;
+            results.submit(() -> play(number));
+        }
+        pool.shutdown();
+
+        int[] counts = new int[3];
+        long plies = 0;
+        long[][] latencies = {new long[0], new long[0]};
+        int[] latencyCounts = new int[2];
+        int[] timeouts = new int[2];
+        long start = System.nanoTime();
+
+        if (output.getParent() != null) Files.createDirectories(output.getParent());
+        try (PrintWriter csv = new PrintWriter(Files.newBufferedWriter(output))) {
+            csv.println("game,white,black,winner,reason,plies,duration_ms,wins,losses,draws,score,elo,elo_error,moves_per_sec");
+            for (int finished = 1; finished <= games; finished++) {
+                Result result;
+                try {
+                    result = results.take().get();
+                } catch (ExecutionException e) {
+                    // Players' exceptions are caught in play, so this is a bug in the runner
+                    throw new IllegalStateException(e.getCause());
+                }
+
+                counts[result.result]++;
+                plies += result.plies;
+                for (int player = 0; player < 2; player++) {
+                    long[] moves = result.latencies[player];
+                    if (latencyCounts[player] + moves.length > latencies[player].length) {
+                        latencies[player] = Arrays.copyOf(latencies[player],
+                                Math.max(2 * latencies[player].length, latencyCounts[player] + moves.length));
+                    }
+                    System.arraycopy(moves, 0, latencies[player], latencyCounts[player], moves.length);
+                    latencyCounts[player] += moves.length;
+                    if (result.timedOut == player) timeouts[player]++;
+                }
+
+                double[] elo = elo(counts[WIN], counts[LOSS], counts[DRAW]);
+                double elapsed = (System.nanoTime() - start) / 1e9;
+                String white = result.aWhite ? playerA.getName() : playerB.getName();
+                String black = result.aWhite ? playerB.getName() : playerA.getName();
+                String winner = result.winner == Color.white ? "white" : result.winner == Color.black ? "black" : "draw";
+                csv.println(String.format(Locale.ROOT, "%d,%s,%s,%s,%s,%d,%d,%d,%d,%d,%.4f,%.1f,%.1f,%.1f",
+                        result.game, white, black, winner, result.reason, result.plies, result.durationNanos / 1000000,
+                        counts[WIN], counts[LOSS], counts[DRAW], elo[0], elo[1], elo[2], plies / elapsed));
+                csv.flush();
+                System.out.printf(Locale.ROOT, "%d/%d games, +%d -%d =%d, Elo %.1f +/- %.1f%n", finished, games,
+                        counts[WIN], counts[LOSS], counts[DRAW], elo[1], elo[2]);
+            }
+        }
+
+        Path summary = Paths.get(output.toString().replaceFirst("(\\.csv)?$", "-latency.csv"));
+        try (PrintWriter csv = new PrintWriter(Files.newBufferedWriter(summary))) {
+            csv.println("player,moves,timeouts,mean_ms,p50_ms,p90_ms,p99_ms,max_ms,moves_per_sec");
+            for (int player = 0; player < 2; player++) {
+                long[] moves = Arrays.copyOf(latencies[player], latencyCounts[player]);
+                Arrays.sort(moves);
+                long total = 0;
+                for (long nanos : moves) total += nanos;
+                csv.println(String.format(Locale.ROOT, "%s,%d,%d,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f",
+                        (player == 0 ? playerA : playerB).getName(), moves.length, timeouts[player],
+                        moves.length == 0 ? 0 : total / 1e6 / moves.length, percentile(moves, 50) / 1e6,
+                        percentile(moves, 90) / 1e6, percentile(moves, 99) / 1e6, percentile(moves, 100) / 1e6,
+                        total == 0 ? 0 : moves.length / (total / 1e9)));
+            }
+        }
+        System.out.println("Results written to " + output + " and " + summary);
+    }
+
+    /**
+     * Plays one game, the first player taking white in even games
+     */
+    private Result play(int game) throws ReflectiveOperationException {
+        Result result = new Result();
+        result.game = game;
+        result.aWhite = game % 2 == 0;
+        GomokuPlayer white = create(result.aWhite ? playerA : playerB);
+        GomokuPlayer black = create(result.aWhite ? playerB : playerA);
+
+        Board board = new Board();
+        long[][] latencies = new long[2][GomokuBoard.ROWS * GomokuBoard.COLS];
+        int[] moves = new int[2];
+        long gameStart = System.nanoTime();
+        String status = null;
+
+        while (board.winner == null) {
+            Color turn = board.turn;
+            // Index of the player to move, 0 for the first player
+            int player = (turn == Color.white) == result.aWhite ? 0 : 1;
+
+            Move move;
+            long start = System.nanoTime();
+            try {
+                move = (turn == Color.white ? white : black).chooseMove(board.getPublicBoard(), turn);
+            } catch (Exception e) {
+                move = null;
+            }
+            long time = System.nanoTime() - start;
+            latencies[player][moves[player]++] = time;
+
+            if (time > timeLimitNanos) {
+                board.makeMove(null, turn);
+                status = "Time limit exceeded";
+                result.timedOut = player;
+            } else {
+                status = board.makeMove(move, turn);
+            }
+        }
+
+        result.durationNanos = System.nanoTime() - gameStart;
+        result.winner = board.winner;
+        result.reason = status;
+        result.plies = board.count;
+        result.latencies[0] = Arrays.copyOf(latencies[0], moves[0]);
+        result.latencies[1] = Arrays.copyOf(latencies[1], moves[1]);
+        if (board.winner != Color.white && board.winner != Color.black) {
+            result.result = DRAW;
+        } else {
+            result.result = (board.winner == Color.white) == result.aWhite ? WIN : LOSS;
+        }
+        return result;
+    }
+
+    private static GomokuPlayer create(Class<? extends GomokuPlayer> player) throws ReflectiveOperationException {
+        Constructor<? extends GomokuPlayer> constructor = player.getDeclaredConstructor();
+        constructor.setAccessible(true);
+        return constructor.newInstance();
+    }
+
+    /**
+     * Elo difference from a score, with the 95% error from the spread of the game results
+     *
+     * @return The score, the Elo difference and its error
+     */
+    static double[] elo(int wins, int losses, int draws) {
+        int games = wins + losses + draws;
+        if (games == 0) return new double[]{0.5, 0, 0};
+        double score = (wins + 0.5 * draws) / games;
+        double variance = (wins * Math.pow(1 - score, 2) + draws * Math.pow(0.5 - score, 2)
+                + losses * Math.pow(score, 2)) / games;
+        double error = 1.96 * Math.sqrt(variance / games);
+        double low = elo(score - error);
+        double high = elo(score + error);
+        return new double[]{score, elo(score), (high - low) / 2};
+    }
+
+    private static double elo(double score) {
+        // A clean sweep has no finite Elo, clamp it to half a game off
+        score = Math.min(Math.max(score, 0.001), 0.999);
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    /**
+     * @param sorted Values in ascending order
+     * @return The nearest rank percentile, 0 if there are no values
+     */
+    static long percentile(long[] sorted, int percent) {
+        if (sorted.length == 0) return 0;
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    /**
+     * The outcome of one game
+     */
+    private static class Result {
+        int game;
+        boolean aWhite;
+        Color winner;
+        String reason;
+        int result;
+        int plies;
+        long durationNanos;
+        int timedOut = -1; // The player that ran out of time, if any
+        long[][] latencies = new long[2][];
+    }
+
+    /**
+     * The rules of GomokuBoard without the Canvas: the same checks in the same order with the same messages,
+     * the lines of five kept as bitboards with square = row * 8 + col.
+     */
+    static class Board {
+        static final long[] WINDOWS; // Every 5 square window
+
+        static {
+            int[][] directions = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+            long[] windows = new long[GomokuBoard.ROWS * GomokuBoard.COLS * directions.length];
+            int count = 0;
+            for (int row = 0; row < GomokuBoard.ROWS; row++) {
+                for (int col = 0; col < GomokuBoard.COLS; col++) {
+                    for (int[] direction : directions) {
+                        int endRow = row + 4 * direction[0];
+                        int endCol = col + 4 * direction[1];
+                        if (endRow >= GomokuBoard.ROWS || endCol < 0 || endCol >= GomokuBoard.COLS) continue;
+                        long window = 0;
+                        for (int i = 0; i < 5; i++) {
+                            window |= 1L << ((row + i * direction[0]) * GomokuBoard.COLS + col + i * direction[1]);
+                        }
+                        windows[count++] = window;
+                    }
+                }
+            }
+            WINDOWS = Arrays.copyOf(windows, count);
+        }
+
+        private final Color[][] board = new Color[GomokuBoard.ROWS][GomokuBoard.COLS];
+        private long white = 0;
+        private long black = 0;
+        Color turn = Color.white;
+        Color winner = null; // Color.blue for a draw, as GomokuBoard
+        int count = 0;
+
+        /**
+         * Plays a move, a bad move losing the game
+         *
+         * @return What happened, in GomokuBoard's words
+         */
+        String makeMove(Move move, Color colour) {
+            Color other = turn == Color.white ? Color.black : Color.white;
+            if (winner != null) return "ERROR: Game is already over";
+            if (turn != colour) return "ERROR: It is not your turn";
+            if (move == null) {
+                winner = other;
+                return "Exception or null Move";
+            }
+            if (move.col < 0 || move.col >= GomokuBoard.COLS || move.row < 0 || move.row >= GomokuBoard.ROWS) {
+                winner = other;
+                return "Move out of range";
+            }
+            if (board[move.row][move.col] != null) {
+                winner = other;
+                return "Move in occupied cell";
+            }
+
+            board[move.row][move.col] = turn;
+            long square = 1L << (move.row * GomokuBoard.COLS + move.col);
+            long stones = turn == Color.white ? (white |= square) : (black |= square);
+            Color mover = turn;
+            turn = other;
+            count++;
+
+            boolean open = false;
+            for (long window : WINDOWS) {
+                if ((window & stones) == window) {
+                    winner = mover;
+                    return mover == Color.white ? "White wins" : "Black wins";
+                }
+                if ((window & white) == 0 || (window & black) == 0) open = true;
+            }
+            if (count == GomokuBoard.ROWS * GomokuBoard.COLS || !open) {
+                winner = Color.blue;
+                return "Game drawn";
+            }
+            return turn == Color.white ? "White to play" : "Black to play";
+        }
+
+        /**
+         * @return A copy of the board for the players
+         */
+        Color[][] getPublicBoard() {
+            Color[][] copy = new Color[GomokuBoard.ROWS][];
+            for (int row = 0; row < GomokuBoard.ROWS; row++) {
+                copy[row] = board[row].clone();
+            }
+            return copy;
+        }
+    }
+}